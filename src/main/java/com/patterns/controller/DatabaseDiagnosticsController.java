@@ -0,0 +1,40 @@
+package com.patterns.controller;
+
+import com.patterns.creational.singleton.DatabaseConnection;
+import com.patterns.creational.singleton.ShardRouter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Operational view of the database layer behind the singleton demo
+ */
+@RestController
+@RequestMapping("/api/patterns/singleton")
+public class DatabaseDiagnosticsController {
+    
+    @Autowired
+    private DatabaseConnection databaseConnection;
+    
+    @Autowired
+    private ShardRouter shardRouter;
+    
+    @GetMapping("/leaks")
+    public Map<String, Object> getLeaks() {
+        return databaseConnection.getLeakReport();
+    }
+    
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("pool", databaseConnection.getPoolStats());
+        response.put("statementCache", databaseConnection.getStatementCacheStats());
+        response.put("resultCache", databaseConnection.getResultCacheStats());
+        response.put("writes", databaseConnection.getWriteStats());
+        response.put("storage", databaseConnection.getStorageStats());
+        response.put("shards", shardRouter.getShardStats());
+        return response;
+    }
+}
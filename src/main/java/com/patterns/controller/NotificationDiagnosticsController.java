@@ -0,0 +1,34 @@
+package com.patterns.controller;
+
+import com.patterns.creational.factory.NotificationDispatcher;
+import com.patterns.creational.factory.NotificationTemplates;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Operational view of the notification pipeline behind the factory demo
+ */
+@RestController
+@RequestMapping("/api/patterns/notifications")
+public class NotificationDiagnosticsController {
+    
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+    
+    @Autowired
+    private NotificationTemplates notificationTemplates;
+    
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("channels", notificationDispatcher.getStats());
+        response.put("dedup", notificationDispatcher.getDedupStats());
+        response.put("retries", notificationDispatcher.getRetryStats());
+        response.put("outbox", notificationDispatcher.getOutboxStats());
+        response.put("templates", notificationTemplates.getStats());
+        return response;
+    }
+}
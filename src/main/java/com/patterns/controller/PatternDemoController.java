@@ -1,6 +1,7 @@
 package com.patterns.controller;
 
 import com.patterns.creational.singleton.DatabaseConnection;
+import com.patterns.creational.factory.NotificationDispatcher;
 import com.patterns.creational.factory.NotificationFactory;
 import com.patterns.creational.builder.User;
 import com.patterns.structural.adapter.PaymentAdapter;
@@ -17,6 +18,7 @@ import com.patterns.behavioral.state.OrderContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -26,6 +28,9 @@ public class PatternDemoController {
     @Autowired
     private DatabaseConnection databaseConnection;
     
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+    
     @Autowired
     private NotificationFactory notificationFactory;
     
@@ -58,16 +63,44 @@ public class PatternDemoController {
         Map<String, Object> response = new HashMap<>();
         databaseConnection.connect();
         response.put("connected", databaseConnection.isConnected());
+        response.put("pool", databaseConnection.getPoolStats());
         response.put("pattern", "Singleton Pattern - Single instance managed by Spring");
         return response;
     }
     
+    @GetMapping("/factory/broadcast")
+    public Map<String, Object> broadcastFactory(@RequestParam(required = false) List<String> types,
+                                                @RequestParam(defaultValue = "Test message") String message,
+                                                @RequestParam(required = false) Long timeoutMs) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            List<String> channels = types == null || types.isEmpty() ? notificationFactory.getTypes() : types;
+            long started = System.nanoTime();
+            // Channels are sent concurrently, so the request takes as long as the slowest one
+            Map<String, Map<String, Object>> reports = timeoutMs == null
+                    ? notificationDispatcher.broadcast(channels, message)
+                    : notificationDispatcher.broadcast(channels, message, timeoutMs);
+            response.put("success", reports.values().stream().allMatch(r -> Boolean.TRUE.equals(r.get("success"))));
+            response.put("channels", reports);
+            response.put("elapsedMs", (System.nanoTime() - started) / 1e6);
+            response.put("pattern", "Factory Pattern - Creates objects without specifying exact classes");
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+    
     @GetMapping("/factory/{type}")
     public Map<String, Object> testFactory(@PathVariable String type) {
         Map<String, Object> response = new HashMap<>();
         try {
-            var notification = notificationFactory.createNotification(type);
-            notification.send("Test message");
+            // Queued for the channel's workers, so a slow gateway does not hold up the request
+            var delivery = notificationDispatcher.dispatch(type, "Test message");
+            Throwable rejection = delivery.handle((sent, error) -> error).getNow(null);
+            if (rejection != null) {
+                throw new IllegalStateException(rejection.getMessage(), rejection);
+            }
             response.put("success", true);
             response.put("type", type);
             response.put("pattern", "Factory Pattern - Creates objects without specifying exact classes");
@@ -0,0 +1,387 @@
+package com.patterns.creational.builder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact store for large numbers of {@link User}s, one column per field instead of
+ * one object per user.
+ *
+ * Ages sit in an int array. Unique-ish fields (email, phone) are packed as UTF-8 bytes
+ * behind an offset array; repetitive fields (first name, last name, address) are
+ * dictionary encoded, so each distinct value is stored once and a user holds an int code.
+ * A dictionary column whose values turn out mostly distinct, as addresses usually are,
+ * falls back to plain packing. A user costs about its UTF-8 bytes plus a few ints rather
+ * than seven objects and their headers.
+ *
+ * {@link #get(int)} returns a {@link UserView} that decodes fields only when asked;
+ * {@link UserView#toUser()} materializes a regular {@link User}.
+ */
+public class ColumnarUserStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int DICTIONARY_SAMPLE_ROWS = 1 << 16;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final DictionaryColumn firstNames = new DictionaryColumn();
+    private final DictionaryColumn lastNames = new DictionaryColumn();
+    private final DictionaryColumn addresses = new DictionaryColumn();
+    private final PackedColumn emails = new PackedColumn();
+    private final PackedColumn phones = new PackedColumn();
+    private int[] ages = new int[INITIAL_CAPACITY];
+    private int size;
+    
+    /**
+     * Appends the user and returns its index.
+     */
+    public int add(User user) {
+        lock.writeLock().lock();
+        try {
+            if (size == ages.length) {
+                ages = Arrays.copyOf(ages, grow(ages.length));
+            }
+            firstNames.add(size, user.getFirstName());
+            lastNames.add(size, user.getLastName());
+            addresses.add(size, user.getAddress());
+            emails.add(size, user.getEmail());
+            phones.add(size, user.getPhone());
+            ages[size] = user.getAge();
+            return size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Lazy view of the user at the index; nothing is decoded until a getter is called.
+     */
+    public UserView get(int index) {
+        lock.readLock().lock();
+        try {
+            if (index < 0 || index >= size) {
+                throw new IllegalArgumentException("No user at index " + index + ", size is " + size);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new UserView(this, index);
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Shrinks the columns to what the stored users need, for a store that is done growing.
+     * Adding more users grows them again.
+     */
+    public void trimToSize() {
+        lock.writeLock().lock();
+        try {
+            ages = Arrays.copyOf(ages, Math.max(size, INITIAL_CAPACITY));
+            firstNames.trimToSize(size);
+            lastNames.trimToSize(size);
+            addresses.trimToSize(size);
+            emails.trimToSize();
+            phones.trimToSize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Heap held by the store's columns, counting their arrays at full capacity but not
+     * array headers or the small objects around them. Deterministic, unlike sampling the
+     * heap, so it can be compared and asserted on.
+     */
+    public long getMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) ages.length * Integer.BYTES
+                    + firstNames.getMemoryBytes() + lastNames.getMemoryBytes() + addresses.getMemoryBytes()
+                    + emails.getMemoryBytes() + phones.getMemoryBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private String read(Column column, int index) {
+        lock.readLock().lock();
+        try {
+            return column.get(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private int readAge(int index) {
+        lock.readLock().lock();
+        try {
+            return ages[index];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private static int grow(int capacity) {
+        int grown = capacity + (capacity >> 1);
+        if (grown < 0) {
+            throw new IllegalStateException("Columnar user store is full");
+        }
+        return grown;
+    }
+    
+    /**
+     * A user inside the store. Each getter decodes its field on the call.
+     */
+    public static class UserView {
+        private final ColumnarUserStore store;
+        private final int index;
+        
+        private UserView(ColumnarUserStore store, int index) {
+            this.store = store;
+            this.index = index;
+        }
+        
+        public int getIndex() { return index; }
+        public String getFirstName() { return store.read(store.firstNames, index); }
+        public String getLastName() { return store.read(store.lastNames, index); }
+        public String getEmail() { return store.read(store.emails, index); }
+        public String getPhone() { return store.read(store.phones, index); }
+        public String getAddress() { return store.read(store.addresses, index); }
+        public int getAge() { return store.readAge(index); }
+        
+        public User toUser() {
+            return new User.UserBuilder()
+                    .firstName(getFirstName())
+                    .lastName(getLastName())
+                    .email(getEmail())
+                    .phone(getPhone())
+                    .address(getAddress())
+                    .age(getAge())
+                    .build();
+        }
+        
+        @Override
+        public String toString() {
+            return toUser().toString();
+        }
+    }
+    
+    private interface Column {
+        String get(int index);
+    }
+    
+    // Strings stored back to back as UTF-8; offsets[i]..offsets[i + 1] spans value i
+    private static class PackedColumn implements Column {
+        private byte[] bytes = new byte[INITIAL_CAPACITY * 16];
+        private int[] offsets = new int[INITIAL_CAPACITY + 1];
+        private final BitSet nulls = new BitSet();
+        private int count;
+        
+        // Values must be appended in index order
+        void add(int index, String value) {
+            if (value == null) {
+                ensureIndex(index);
+                nulls.set(index);
+                offsets[index + 1] = offsets[index];
+                count = index + 1;
+            } else {
+                add(index, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        
+        void add(int index, byte[] encoded) {
+            ensureIndex(index);
+            int start = offsets[index];
+            if (start + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(grow(bytes.length), start + encoded.length));
+            }
+            System.arraycopy(encoded, 0, bytes, start, encoded.length);
+            offsets[index + 1] = start + encoded.length;
+            count = index + 1;
+        }
+        
+        private void ensureIndex(int index) {
+            if (index + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, grow(offsets.length));
+            }
+        }
+        
+        // Appends without an index, for dictionary values
+        int append(byte[] encoded) {
+            add(count, encoded);
+            return count - 1;
+        }
+        
+        boolean matches(int index, byte[] encoded) {
+            return Arrays.equals(bytes, offsets[index], offsets[index + 1], encoded, 0, encoded.length);
+        }
+        
+        byte[] copy(int index) {
+            return Arrays.copyOfRange(bytes, offsets[index], offsets[index + 1]);
+        }
+        
+        int hash(int index) {
+            return ColumnarUserStore.hash(bytes, offsets[index], offsets[index + 1]);
+        }
+        
+        @Override
+        public String get(int index) {
+            if (nulls.get(index)) {
+                return null;
+            }
+            int start = offsets[index];
+            return new String(bytes, start, offsets[index + 1] - start, StandardCharsets.UTF_8);
+        }
+        
+        void trimToSize() {
+            bytes = Arrays.copyOf(bytes, offsets[count]);
+            offsets = Arrays.copyOf(offsets, Math.max(count, INITIAL_CAPACITY) + 1);
+        }
+        
+        long getMemoryBytes() {
+            return bytes.length + (long) offsets.length * Integer.BYTES + nulls.size() / Byte.SIZE;
+        }
+    }
+    
+    // Each distinct value is packed once; users hold its code, -1 for null. Codes are found
+    // through an open-addressed table hashed and compared on the packed bytes, so a distinct
+    // value costs its bytes and two ints rather than a String, an Integer and a map entry.
+    // A column that turns out mostly unique stops paying for the codes and is packed plainly.
+    private static class DictionaryColumn implements Column {
+        private PackedColumn values = new PackedColumn();
+        // Code + 1 per slot, 0 when empty; linear probing, kept at most three quarters full
+        private int[] table = new int[INITIAL_CAPACITY];
+        private int[] userCodes = new int[INITIAL_CAPACITY];
+        // Set once the column has given up on its dictionary
+        private PackedColumn plain;
+        // UTF-8 bytes of every value added, as a plain column would hold them
+        private long rawBytes;
+        
+        void add(int index, String value) {
+            if (plain != null) {
+                plain.add(index, value);
+                return;
+            }
+            if (index == userCodes.length) {
+                // Judged on a sample large enough for repeats to show
+                if (index >= DICTIONARY_SAMPLE_ROWS && dictionaryBytes(index) >= plainBytes(index)) {
+                    unpack(index);
+                    plain.add(index, value);
+                    return;
+                }
+                userCodes = Arrays.copyOf(userCodes, grow(userCodes.length));
+            }
+            if (value == null) {
+                userCodes[index] = -1;
+                return;
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            rawBytes += encoded.length;
+            int mask = table.length - 1;
+            int slot = hash(encoded, 0, encoded.length) & mask;
+            while (table[slot] != 0) {
+                int code = table[slot] - 1;
+                if (values.matches(code, encoded)) {
+                    userCodes[index] = code;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            int code = values.append(encoded);
+            table[slot] = code + 1;
+            userCodes[index] = code;
+            if (values.count > table.length - (table.length >> 2)) {
+                rehash(table.length << 1);
+            }
+        }
+        
+        private void rehash(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalStateException("Columnar user store is full");
+            }
+            int[] rehashed = new int[capacity];
+            int mask = capacity - 1;
+            for (int code = 0; code < values.count; code++) {
+                int slot = values.hash(code) & mask;
+                while (rehashed[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                rehashed[slot] = code + 1;
+            }
+            table = rehashed;
+        }
+        
+        // What the first rows take with the dictionary: distinct bytes, their offsets, the table and the codes
+        private long dictionaryBytes(int rows) {
+            return values.offsets[values.count] + (long) (values.count + table.length + rows) * Integer.BYTES;
+        }
+        
+        private long plainBytes(int rows) {
+            return rawBytes + (long) rows * Integer.BYTES;
+        }
+        
+        // Rewrites the first rows as a plain packed column and drops the dictionary
+        private void unpack(int rows) {
+            PackedColumn packed = new PackedColumn();
+            for (int i = 0; i < rows; i++) {
+                int code = userCodes[i];
+                if (code < 0) {
+                    packed.add(i, (String) null);
+                } else {
+                    packed.add(i, values.copy(code));
+                }
+            }
+            plain = packed;
+            values = null;
+            table = null;
+            userCodes = null;
+        }
+        
+        @Override
+        public String get(int index) {
+            if (plain != null) {
+                return plain.get(index);
+            }
+            int code = userCodes[index];
+            return code < 0 ? null : values.get(code);
+        }
+        
+        void trimToSize(int rows) {
+            if (plain != null) {
+                plain.trimToSize();
+                return;
+            }
+            values.trimToSize();
+            userCodes = Arrays.copyOf(userCodes, Math.max(rows, INITIAL_CAPACITY));
+        }
+        
+        long getMemoryBytes() {
+            if (plain != null) {
+                return plain.getMemoryBytes();
+            }
+            return values.getMemoryBytes() + (long) (table.length + userCodes.length) * Integer.BYTES;
+        }
+    }
+    
+    // 32-bit FNV-1a, finished with the MurmurHash3 mixer so low bits are usable as a table index
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ bytes[i]) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,243 @@
+package com.patterns.creational.builder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of {@link User} for cache and replication traffic, written to and
+ * read from {@link ByteBuffer}s directly.
+ *
+ * Layout: a version byte, the age as a 4-byte int, then first name, last name, email,
+ * phone and address, each as a varint of its UTF-8 length plus one (0 means null)
+ * followed by the bytes. Strings are encoded straight into the buffer without an
+ * intermediate byte array.
+ *
+ * {@link #decode(ByteBuffer)} builds a full User. {@link #view(ByteBuffer)} only walks
+ * the field lengths, so a reader that needs the age or one field decodes nothing else.
+ */
+public final class UserCodec {
+    public static final byte VERSION = 1;
+    private static final int FIELDS = 5;
+    private static final int HEADER_BYTES = 1 + Integer.BYTES;
+    // Fields longer than this are copied into a one-off array rather than kept per thread
+    private static final int MAX_RETAINED_SCRATCH = 16 * 1024;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+    
+    private UserCodec() {
+    }
+    
+    /**
+     * Bytes {@link #encode} writes for the user.
+     */
+    public static int encodedSize(User user) {
+        int size = HEADER_BYTES;
+        for (String field : fields(user)) {
+            int length = field == null ? 0 : utf8Length(field);
+            size += varintSize(field == null ? 0 : length + 1) + length;
+        }
+        return size;
+    }
+    
+    /**
+     * Writes the user at the buffer's position and advances it.
+     */
+    public static void encode(User user, ByteBuffer buffer) {
+        int size = encodedSize(user);
+        if (size > buffer.remaining()) {
+            throw new IllegalArgumentException("User needs " + size + " bytes, buffer has " + buffer.remaining());
+        }
+        buffer.put(VERSION);
+        buffer.putInt(user.getAge());
+        for (String field : fields(user)) {
+            if (field == null) {
+                buffer.put((byte) 0);
+            } else {
+                putVarint(buffer, utf8Length(field) + 1);
+                putUtf8(buffer, field);
+            }
+        }
+    }
+    
+    public static ByteBuffer encode(User user) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(user));
+        encode(user, buffer);
+        return buffer.flip();
+    }
+    
+    /**
+     * Reads one user at the buffer's position and advances past it.
+     */
+    public static User decode(ByteBuffer buffer) {
+        return view(buffer).toUser();
+    }
+    
+    /**
+     * Locates the fields of the user at the buffer's position and advances past it,
+     * without decoding any string.
+     */
+    public static EncodedUser view(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES) {
+            throw new IllegalArgumentException("Truncated user record");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported user record version " + version);
+        }
+        int age = buffer.getInt();
+        int[] offsets = new int[FIELDS];
+        int[] lengths = new int[FIELDS];
+        for (int i = 0; i < FIELDS; i++) {
+            int length = getVarint(buffer) - 1;
+            if (length < -1) {
+                throw new IllegalArgumentException("Malformed length in user record");
+            }
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("Truncated user record");
+            }
+            offsets[i] = buffer.position();
+            lengths[i] = length;
+            if (length > 0) {
+                buffer.position(buffer.position() + length);
+            }
+        }
+        return new EncodedUser(buffer.duplicate(), age, offsets, lengths);
+    }
+    
+    private static String[] fields(User user) {
+        return new String[]{user.getFirstName(), user.getLastName(), user.getEmail(), user.getPhone(),
+                user.getAddress()};
+    }
+    
+    // Matches String.getBytes(UTF_8), which writes '?' for an unpaired surrogate
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    
+    private static void putUtf8(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+    
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+    
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Truncated user record");
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed length in user record");
+    }
+    
+    /**
+     * A user record inside a buffer. Getters decode their field on each call.
+     */
+    public static class EncodedUser {
+        private final ByteBuffer buffer;
+        private final int age;
+        private final int[] offsets;
+        private final int[] lengths;
+        
+        private EncodedUser(ByteBuffer buffer, int age, int[] offsets, int[] lengths) {
+            this.buffer = buffer;
+            this.age = age;
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+        
+        public int getAge() { return age; }
+        public String getFirstName() { return field(0); }
+        public String getLastName() { return field(1); }
+        public String getEmail() { return field(2); }
+        public String getPhone() { return field(3); }
+        public String getAddress() { return field(4); }
+        
+        public User toUser() {
+            return new User.UserBuilder()
+                    .firstName(getFirstName())
+                    .lastName(getLastName())
+                    .email(getEmail())
+                    .phone(getPhone())
+                    .address(getAddress())
+                    .age(age)
+                    .build();
+        }
+        
+        private String field(int index) {
+            int length = lengths[index];
+            if (length < 0) {
+                return null;
+            }
+            if (buffer.hasArray()) {
+                return new String(buffer.array(), buffer.arrayOffset() + offsets[index], length, StandardCharsets.UTF_8);
+            }
+            // Direct buffers are copied through a per-thread scratch array
+            byte[] scratch = SCRATCH.get();
+            if (length > MAX_RETAINED_SCRATCH) {
+                scratch = new byte[length];
+            } else if (scratch.length < length) {
+                scratch = new byte[Math.min(Math.max(length, scratch.length * 2), MAX_RETAINED_SCRATCH)];
+                SCRATCH.set(scratch);
+            }
+            buffer.get(offsets[index], scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
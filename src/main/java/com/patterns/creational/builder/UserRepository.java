@@ -0,0 +1,228 @@
+package com.patterns.creational.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent in-memory store of {@link User}s with a primary id index, a unique
+ * email index, an age range index and a last name prefix index.
+ *
+ * Writers lock only the user they change. They add the new index entries, publish the
+ * user, then remove the old entries, so readers never take a lock: a query only returns
+ * an index entry that still matches the user it points to.
+ *
+ * Emails and last names are matched case-insensitively. Users without an email or last
+ * name are simply left out of that index.
+ */
+public class UserRepository {
+    private static final int STRIPES = 64;
+    // Age index keys pack the age above a 40-bit id, so a range is one contiguous subset
+    private static final int ID_BITS = 40;
+    private static final long MAX_ID = (1L << ID_BITS) - 1;
+    private static final int MAX_AGE = (1 << (63 - ID_BITS)) - 1;
+    
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    private final Map<String, Long> idsByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Long> ageIndex = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<NameKey> lastNameIndex = new ConcurrentSkipListSet<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final AtomicLong nextId = new AtomicLong();
+    
+    public UserRepository() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+    
+    /**
+     * Stores a new user and returns its id.
+     */
+    public long insert(User user) {
+        long id = nextId.incrementAndGet();
+        if (id > MAX_ID) {
+            throw new IllegalStateException("User ids are exhausted");
+        }
+        write(id, user, false);
+        return id;
+    }
+    
+    /**
+     * Replaces the user stored under the id.
+     */
+    public void update(long id, User user) {
+        write(id, user, true);
+    }
+    
+    public boolean delete(long id) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            User removed = users.remove(id);
+            if (removed == null) {
+                return false;
+            }
+            unindex(id, removed, null);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void write(long id, User user, boolean existing) {
+        if (user.getAge() < 0 || user.getAge() > MAX_AGE) {
+            throw new IllegalArgumentException("Age must be between 0 and " + MAX_AGE + ", got " + user.getAge());
+        }
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            User previous = users.get(id);
+            if (existing && previous == null) {
+                throw new IllegalArgumentException("No user with id " + id);
+            }
+            // Claiming the email first makes uniqueness hold across writers of different users
+            String email = normalize(user.getEmail());
+            if (email != null) {
+                Long owner = idsByEmail.putIfAbsent(email, id);
+                if (owner != null && owner != id) {
+                    throw new IllegalStateException("Email is already registered: " + user.getEmail());
+                }
+            }
+            ageIndex.add(ageKey(user.getAge(), id));
+            String lastName = normalize(user.getLastName());
+            if (lastName != null) {
+                lastNameIndex.add(new NameKey(lastName, id));
+            }
+            users.put(id, user);
+            if (previous != null) {
+                unindex(id, previous, user);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Removes the entries for the old version that the new version (if any) no longer shares
+    private void unindex(long id, User old, User current) {
+        String oldEmail = normalize(old.getEmail());
+        if (oldEmail != null && (current == null || !oldEmail.equals(normalize(current.getEmail())))) {
+            idsByEmail.remove(oldEmail, id);
+        }
+        if (current == null || old.getAge() != current.getAge()) {
+            ageIndex.remove(ageKey(old.getAge(), id));
+        }
+        String oldLastName = normalize(old.getLastName());
+        if (oldLastName != null && (current == null || !oldLastName.equals(normalize(current.getLastName())))) {
+            lastNameIndex.remove(new NameKey(oldLastName, id));
+        }
+    }
+    
+    public User findById(long id) {
+        return users.get(id);
+    }
+    
+    public User findByEmail(String email) {
+        String key = normalize(email);
+        if (key == null) {
+            return null;
+        }
+        Long id = idsByEmail.get(key);
+        if (id == null) {
+            return null;
+        }
+        User user = users.get(id);
+        return user != null && key.equals(normalize(user.getEmail())) ? user : null;
+    }
+    
+    /**
+     * Users aged between {@code minAge} and {@code maxAge} inclusive, youngest first.
+     */
+    public List<User> findByAgeBetween(int minAge, int maxAge) {
+        List<User> result = new ArrayList<>();
+        if (minAge > maxAge || maxAge < 0 || minAge > MAX_AGE) {
+            return result;
+        }
+        long from = ageKey(Math.max(minAge, 0), 0);
+        long to = ageKey(Math.min(maxAge, MAX_AGE), MAX_ID);
+        for (long key : ageIndex.subSet(from, true, to, true)) {
+            User user = users.get(key & MAX_ID);
+            // Skip entries a concurrent update has not removed yet
+            if (user != null && user.getAge() == (int) (key >>> ID_BITS)) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Users whose last name starts with the prefix, in last name order.
+     */
+    public List<User> findByLastNamePrefix(String prefix) {
+        List<User> result = new ArrayList<>();
+        String key = normalize(prefix);
+        if (key == null) {
+            return result;
+        }
+        NavigableSet<NameKey> matches = lastNameIndex.subSet(
+                new NameKey(key, 0), true, new NameKey(key + Character.MAX_VALUE, 0), false);
+        for (NameKey match : matches) {
+            User user = users.get(match.id);
+            if (user != null && match.name.equals(normalize(user.getLastName()))) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+    
+    public int size() {
+        return users.size();
+    }
+    
+    private ReentrantLock lockFor(long id) {
+        return locks[(int) (id ^ (id >>> 32)) & (STRIPES - 1)];
+    }
+    
+    private static long ageKey(int age, long id) {
+        return ((long) age << ID_BITS) | id;
+    }
+    
+    // Blank values count as missing
+    private static String normalize(String value) {
+        return value == null || value.isBlank() ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static class NameKey implements Comparable<NameKey> {
+        private final String name;
+        private final long id;
+        
+        NameKey(String name, long id) {
+            this.name = name;
+            this.id = id;
+        }
+        
+        @Override
+        public int compareTo(NameKey other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : Long.compare(id, other.id);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NameKey)) return false;
+            NameKey other = (NameKey) o;
+            return id == other.id && name.equals(other.name);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + Long.hashCode(id);
+        }
+    }
+}
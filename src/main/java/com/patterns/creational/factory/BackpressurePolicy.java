@@ -0,0 +1,26 @@
+package com.patterns.creational.factory;
+
+import java.util.Locale;
+
+/**
+ * What a channel queue does with a new notification when it is full.
+ */
+public enum BackpressurePolicy {
+    // Wait up to the configured timeout for room, then reject
+    BLOCK,
+    // Evict the oldest queued notification to make room
+    DROP_OLDEST,
+    // Fail the new notification immediately
+    REJECT;
+    
+    /**
+     * Parses property values such as {@code block}, {@code drop-oldest} or {@code REJECT}.
+     */
+    public static BackpressurePolicy parse(String value) {
+        try {
+            return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown backpressure policy: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,771 @@
+package com.patterns.creational.factory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded queue plus a fixed set of worker threads sending through one channel.
+ * Callers only pay for an enqueue; a slow gateway backs up this channel's queue,
+ * and what happens when the queue is full is decided by its {@link BackpressurePolicy}.
+ *
+ * Workers send in batches: a worker takes up to {@code batchSize} messages, waiting at
+ * most {@code lingerMillis} after the first one for more, and hands them to
+ * {@link Notification#sendAll} in a single provider call.
+ *
+ * Optional {@link TokenBucket} limits pace the channel as a whole and each recipient.
+ * Messages over a limit are delayed, never rejected: workers wait out the channel
+ * limit before a send, and a message over its recipient's limit is only queued once
+ * that recipient has a token, so it holds up neither the queue nor other recipients.
+ * Deferred messages never wait for queue space on the shared delay thread; under
+ * {@link BackpressurePolicy#BLOCK} a full queue is retried until the block timeout.
+ *
+ * Failed sends are retried with exponential backoff and jitter when a shared
+ * {@link HashedWheelTimer} is configured; the caller's future only fails once the
+ * attempts run out.
+ *
+ * The queue is ordered by {@link NotificationPriority}: workers always take the most
+ * urgent messages first, so an OTP is not stuck behind a marketing burst, and
+ * {@link BackpressurePolicy#DROP_OLDEST} sheds the least urgent ones first. A message
+ * whose deadline passes while it waits is dropped instead of sent. Priority is strict,
+ * so low priority mail can wait out a sustained stream of urgent messages.
+ *
+ * With recipient affinity every worker owns a queue, and messages are routed to a worker
+ * by a hash of their recipient. A recipient's messages are then sent in order, except
+ * when a retry jumps back in, and per-recipient state such as the recipient rate limit
+ * lives in a plain map confined to that worker's thread, its {@link DispatchShard}. A message
+ * over its recipient's limit is held by the worker, which keeps sending other recipients'
+ * messages meanwhile.
+ * Each worker's queue gets an equal share of the capacity, so backpressure applies per worker.
+ *
+ * In digest mode a worker merges a recipient's normal and low priority messages into one,
+ * such as "5 orders updated", sent when the recipient's window expires or it reaches the
+ * message threshold. Digest buffers are worker state too, so digest mode needs recipient
+ * affinity or a single worker. Urgent messages, messages with a deadline and retries are
+ * never merged.
+ */
+public class ChannelDispatcher {
+    private final Notification channel;
+    // One queue shared by all workers, or one per worker with recipient affinity
+    private final DispatchShard[] shards;
+    private final AtomicInteger unaddressedRoundRobin = new AtomicInteger();
+    // Bumped by evictIdleRecipients; affinity workers evict their own recipients when they see it
+    private volatile int evictionGeneration;
+    private final NotificationPriority defaultPriority;
+    private final BackpressurePolicy policy;
+    private final long blockTimeoutMillis;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final TokenBucket channelLimit;
+    private final double recipientRate;
+    private final int recipientBurst;
+    private final Map<String, TokenBucket> recipientLimits = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService delayer;
+    private final HashedWheelTimer retryTimer;
+    private final int maxAttempts;
+    private final long retryBaseDelayMillis;
+    private final long retryMaxDelayMillis;
+    private final List<Thread> workers = new ArrayList<>();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder sendCalls = new LongAdder();
+    private final LongAdder attempted = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder delayedByChannel = new LongAdder();
+    // Messages deferred on the delayer; shards count the ones they hold
+    private final LongAdder delayedByRecipient = new LongAdder();
+    private final LongAdder throttleNanos = new LongAdder();
+    // Queue waits per priority level, indexed by ordinal
+    private final LongAdder[] dequeuedByPriority = new LongAdder[PRIORITIES.length];
+    private final LongAdder[] queueWaitNanos = new LongAdder[PRIORITIES.length];
+    private final AtomicLongArray maxQueueWaitNanos = new AtomicLongArray(PRIORITIES.length);
+    private final LongAdder sendNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private volatile boolean running = true;
+    
+    private static final NotificationPriority[] PRIORITIES = NotificationPriority.values();
+    private static final long DEFERRED_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    
+    /**
+     * Dispatcher that sends each message in its own call.
+     */
+    public ChannelDispatcher(Notification channel, int queueCapacity, int workerCount,
+                             BackpressurePolicy policy, long blockTimeoutMillis) {
+        this(channel, queueCapacity, workerCount, policy, blockTimeoutMillis, 1, 0);
+    }
+    
+    public ChannelDispatcher(Notification channel, int queueCapacity, int workerCount,
+                             BackpressurePolicy policy, long blockTimeoutMillis, int batchSize, long lingerMillis) {
+        this(new ChannelDispatcherBuilder()
+                .channel(channel)
+                .queueCapacity(queueCapacity)
+                .workers(workerCount)
+                .backpressure(policy, blockTimeoutMillis)
+                .batching(batchSize, lingerMillis));
+    }
+    
+    private ChannelDispatcher(ChannelDispatcherBuilder builder) {
+        if (builder.queueCapacity < 1 || builder.workers < 1 || builder.blockTimeoutMillis < 0
+                || builder.batchSize < 1 || builder.lingerMillis < 0 || builder.maxAttempts < 1
+                || builder.retryBaseDelayMillis < 1 || builder.retryMaxDelayMillis < builder.retryBaseDelayMillis
+                || builder.digestWindowMillis < 0 || builder.digestMaxMessages < 1) {
+            throw new IllegalArgumentException("Invalid dispatch settings for " + builder.channel.getType()
+                    + ": queueCapacity=" + builder.queueCapacity + ", workers=" + builder.workers
+                    + ", blockTimeoutMillis=" + builder.blockTimeoutMillis + ", batchSize=" + builder.batchSize
+                    + ", lingerMillis=" + builder.lingerMillis + ", maxAttempts=" + builder.maxAttempts
+                    + ", retryDelayMillis=" + builder.retryBaseDelayMillis + ".." + builder.retryMaxDelayMillis
+                    + ", digestWindowMillis=" + builder.digestWindowMillis
+                    + ", digestMaxMessages=" + builder.digestMaxMessages);
+        }
+        if (builder.digestWindowMillis > 0 && !builder.recipientAffinity && builder.workers > 1) {
+            throw new IllegalArgumentException("Digests for " + builder.channel.getType()
+                    + " need recipient affinity or a single worker");
+        }
+        this.channel = builder.channel;
+        int shardCount = builder.recipientAffinity ? builder.workers : 1;
+        this.shards = new DispatchShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            PriorityLevelQueue<Delivery> queue = new PriorityLevelQueue<>(
+                    (builder.queueCapacity + shardCount - 1) / shardCount,
+                    PRIORITIES.length, delivery -> delivery.priority.ordinal());
+            // Without affinity recipient limits are applied before queueing, on the delayer
+            shards[i] = new DispatchShard(queue, channel.getType(), builder.batchSize,
+                    builder.recipientAffinity ? builder.recipientRatePerSecond : 0, builder.recipientBurst,
+                    TimeUnit.MILLISECONDS.toNanos(builder.digestWindowMillis), builder.digestMaxMessages,
+                    builder.digestFormat);
+        }
+        this.defaultPriority = builder.defaultPriority != null ? builder.defaultPriority : channel.getPriority();
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            dequeuedByPriority[i] = new LongAdder();
+            queueWaitNanos[i] = new LongAdder();
+        }
+        this.policy = builder.policy;
+        this.blockTimeoutMillis = builder.blockTimeoutMillis;
+        this.batchSize = builder.batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(builder.lingerMillis);
+        this.channelLimit = builder.ratePerSecond > 0 ? new TokenBucket(builder.ratePerSecond, builder.rateBurst) : null;
+        this.retryTimer = builder.retryTimer;
+        this.maxAttempts = builder.maxAttempts;
+        this.retryBaseDelayMillis = builder.retryBaseDelayMillis;
+        this.retryMaxDelayMillis = builder.retryMaxDelayMillis;
+        this.recipientRate = builder.recipientRatePerSecond;
+        this.recipientBurst = builder.recipientBurst;
+        if (recipientRate > 0) {
+            // Validate the recipient limit up front rather than on the first message
+            new TokenBucket(recipientRate, recipientBurst);
+        }
+        if (recipientRate > 0 && !builder.recipientAffinity) {
+            this.delayer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "notify-" + channel.getType() + "-delay");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.delayer = null;
+        }
+        for (int i = 0; i < builder.workers; i++) {
+            DispatchShard shard = shards[i % shardCount];
+            Thread worker = new Thread(() -> workLoop(shard), "notify-" + channel.getType() + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+    
+    public static class ChannelDispatcherBuilder {
+        private Notification channel;
+        private int queueCapacity = 1000;
+        private int workers = 1;
+        private BackpressurePolicy policy = BackpressurePolicy.BLOCK;
+        private long blockTimeoutMillis = 1000;
+        private int batchSize = 1;
+        private long lingerMillis = 0;
+        private double ratePerSecond = 0;
+        private int rateBurst = 1;
+        private double recipientRatePerSecond = 0;
+        private int recipientBurst = 1;
+        private HashedWheelTimer retryTimer;
+        private int maxAttempts = 1;
+        private long retryBaseDelayMillis = 100;
+        private long retryMaxDelayMillis = 10_000;
+        private NotificationPriority defaultPriority;
+        private boolean recipientAffinity;
+        private long digestWindowMillis;
+        private int digestMaxMessages = 1;
+        private Function<List<String>, String> digestFormat = messages -> messages.size() + " new notifications: "
+                + String.join("; ", messages);
+        
+        public ChannelDispatcherBuilder channel(Notification channel) {
+            this.channel = channel;
+            return this;
+        }
+        
+        public ChannelDispatcherBuilder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+        
+        public ChannelDispatcherBuilder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+        
+        public ChannelDispatcherBuilder backpressure(BackpressurePolicy policy, long blockTimeoutMillis) {
+            this.policy = policy;
+            this.blockTimeoutMillis = blockTimeoutMillis;
+            return this;
+        }
+        
+        public ChannelDispatcherBuilder batching(int batchSize, long lingerMillis) {
+            this.batchSize = batchSize;
+            this.lingerMillis = lingerMillis;
+            return this;
+        }
+        
+        /**
+         * Limit for the channel as a whole; a rate of 0 means unlimited.
+         */
+        public ChannelDispatcherBuilder rateLimit(double perSecond, int burst) {
+            this.ratePerSecond = perSecond;
+            this.rateBurst = burst;
+            return this;
+        }
+        
+        /**
+         * Limit applied separately to every recipient; a rate of 0 means unlimited.
+         */
+        public ChannelDispatcherBuilder recipientRateLimit(double perSecond, int burst) {
+            this.recipientRatePerSecond = perSecond;
+            this.recipientBurst = burst;
+            return this;
+        }
+        
+        /**
+         * Retries failed sends on the given timer, up to {@code maxAttempts} attempts in total,
+         * backing off exponentially from {@code baseDelayMillis} to at most {@code maxDelayMillis}.
+         */
+        public ChannelDispatcherBuilder retry(HashedWheelTimer timer, int maxAttempts,
+                                              long baseDelayMillis, long maxDelayMillis) {
+            this.retryTimer = timer;
+            this.maxAttempts = maxAttempts;
+            this.retryBaseDelayMillis = baseDelayMillis;
+            this.retryMaxDelayMillis = maxDelayMillis;
+            return this;
+        }
+        
+        /**
+         * Priority for messages sent without one; defaults to {@link Notification#getPriority()}.
+         */
+        public ChannelDispatcherBuilder defaultPriority(NotificationPriority priority) {
+            this.defaultPriority = priority;
+            return this;
+        }
+        
+        /**
+         * Gives every worker its own queue and routes messages to workers by recipient.
+         */
+        public ChannelDispatcherBuilder recipientAffinity(boolean recipientAffinity) {
+            this.recipientAffinity = recipientAffinity;
+            return this;
+        }
+        
+        /**
+         * Merges each recipient's messages within {@code windowMillis}, or once there are
+         * {@code maxMessages} of them, into one message built by {@code format}.
+         * A window of 0 turns digests off.
+         */
+        public ChannelDispatcherBuilder digest(long windowMillis, int maxMessages, Function<List<String>, String> format) {
+            this.digestWindowMillis = windowMillis;
+            this.digestMaxMessages = maxMessages;
+            this.digestFormat = format;
+            return this;
+        }
+        
+        public ChannelDispatcher build() {
+            if (channel == null) {
+                throw new IllegalArgumentException("A channel is required");
+            }
+            return new ChannelDispatcher(this);
+        }
+    }
+    
+    /**
+     * Queues a message with no recipient, so only the channel limit applies.
+     */
+    public CompletableFuture<Void> dispatch(String message) {
+        return dispatch(null, message);
+    }
+    
+    /**
+     * Queues a message for a recipient at the channel's default priority, with no deadline.
+     */
+    public CompletableFuture<Void> dispatch(String recipient, String message) {
+        return dispatch(recipient, message, null, null);
+    }
+    
+    /**
+     * Queues a message for a recipient. The future completes once the channel has
+     * sent it, or fails if the message is rejected, dropped, still unsent at its
+     * deadline, or the send throws. A null priority or deadline means the channel
+     * default and no deadline. Messages that never reached the channel fail with
+     * {@link UndeliveredNotificationException}.
+     */
+    public CompletableFuture<Void> dispatch(String recipient, String message,
+                                            NotificationPriority priority, Instant deadline) {
+        Delivery delivery = new Delivery(recipient, message, priority != null ? priority : defaultPriority,
+                deadline != null ? deadline.toEpochMilli() : Delivery.NO_DEADLINE);
+        if (delayer != null && recipient != null && running) {
+            long wait = recipientLimits.computeIfAbsent(recipient, r -> new TokenBucket(recipientRate, recipientBurst))
+                    .reserve(1);
+            if (wait > 0) {
+                delayedByRecipient.increment();
+                try {
+                    delayer.schedule(() -> enqueueDeferred(delivery,
+                            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis)),
+                            wait, TimeUnit.NANOSECONDS);
+                    return delivery.result;
+                } catch (RejectedExecutionException e) {
+                    return reject(delivery, "Dispatcher for " + channel.getType() + " is shut down");
+                }
+            }
+        }
+        return enqueue(delivery);
+    }
+    
+    /**
+     * Forgets recipients whose bucket has refilled, since a fresh bucket behaves the same.
+     * A recipient racing the removal may get at most one extra burst.
+     */
+    public void evictIdleRecipients() {
+        recipientLimits.entrySet().removeIf(entry -> entry.getValue().isFull());
+        evictionGeneration++;
+    }
+    
+    private PriorityLevelQueue<Delivery> queueFor(Delivery delivery) {
+        if (shards.length == 1) {
+            return shards[0].queue();
+        }
+        int h = delivery.recipient != null
+                ? delivery.recipient.hashCode()
+                : unaddressedRoundRobin.getAndIncrement();
+        return shards[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % shards.length].queue();
+    }
+    
+    private CompletableFuture<Void> enqueue(Delivery delivery) {
+        if (!running) {
+            return reject(delivery, "Dispatcher for " + channel.getType() + " is shut down");
+        }
+        PriorityLevelQueue<Delivery> queue = queueFor(delivery);
+        switch (policy) {
+            case BLOCK:
+                try {
+                    if (!queue.offer(delivery, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return reject(delivery, "Queue for " + channel.getType() + " stayed full for "
+                                + blockTimeoutMillis + " ms");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return reject(delivery, "Interrupted while waiting for queue space");
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(delivery)) {
+                    // Shed the oldest of the least urgent messages, but never a more urgent one than this
+                    Delivery victim = queue.pollLeastUrgent(delivery.priority.ordinal());
+                    if (victim == null) {
+                        victim = delivery;
+                    }
+                    dropped.increment();
+                    victim.result.completeExceptionally(new UndeliveredNotificationException(
+                            "Dropped from full " + channel.getType() + " queue"));
+                    if (victim == delivery) {
+                        return delivery.result;
+                    }
+                }
+                break;
+            default:
+                if (!queue.offer(delivery)) {
+                    return reject(delivery, "Queue for " + channel.getType() + " is full");
+                }
+        }
+        return queued(queue, delivery);
+    }
+    
+    private CompletableFuture<Void> queued(PriorityLevelQueue<Delivery> queue, Delivery delivery) {
+        enqueued.increment();
+        // Shut down while we were enqueuing: whoever removes the message is responsible for it
+        if (!running && queue.remove(delivery)) {
+            delivery.result.completeExceptionally(new UndeliveredNotificationException(
+                    "Dispatcher for " + channel.getType() + " is shut down"));
+        }
+        return delivery.result;
+    }
+    
+    // Runs on the delayer, which serves every recipient's deferred messages, so it never blocks:
+    // under the block policy a full queue is offered again shortly, until the block timeout passes
+    private void enqueueDeferred(Delivery delivery, long giveUpAt) {
+        if (policy != BackpressurePolicy.BLOCK) {
+            enqueue(delivery);
+            return;
+        }
+        if (!running) {
+            reject(delivery, "Dispatcher for " + channel.getType() + " is shut down");
+            return;
+        }
+        PriorityLevelQueue<Delivery> queue = queueFor(delivery);
+        if (queue.offer(delivery)) {
+            queued(queue, delivery);
+            return;
+        }
+        long remaining = giveUpAt - System.nanoTime();
+        if (remaining <= 0) {
+            reject(delivery, "Queue for " + channel.getType() + " stayed full for " + blockTimeoutMillis + " ms");
+            return;
+        }
+        try {
+            delayer.schedule(() -> enqueueDeferred(delivery, giveUpAt),
+                    Math.min(remaining, DEFERRED_RETRY_NANOS), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            reject(delivery, "Dispatcher for " + channel.getType() + " is shut down");
+        }
+    }
+    
+    private CompletableFuture<Void> reject(Delivery delivery, String reason) {
+        rejected.increment();
+        delivery.result.completeExceptionally(new UndeliveredNotificationException(reason));
+        return delivery.result;
+    }
+    
+    private void workLoop(DispatchShard shard) {
+        PriorityLevelQueue<Delivery> queue = shard.queue();
+        List<Delivery> batch = new ArrayList<>(batchSize);
+        List<Delivery> taken = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty() || shard.hasOpenDigests()) {
+            try {
+                shard.evictIfRequested(evictionGeneration);
+                // On shutdown open digests are sent straight away rather than lost
+                shard.flushDigests(batch, System.nanoTime(), !running);
+                shard.releaseDue(batch, System.nanoTime());
+                if (batch.isEmpty()) {
+                    Delivery first = queue.poll(shard.idleWaitNanos(), TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    shard.admit(first, batch);
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                }
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    // Take whatever is already queued without waiting, then linger for stragglers
+                    if (queue.drainTo(taken, batchSize - batch.size()) > 0) {
+                        for (Delivery delivery : taken) {
+                            shard.admit(delivery, batch);
+                        }
+                        taken.clear();
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Delivery next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    shard.admit(next, batch);
+                }
+            } catch (InterruptedException e) {
+                // Only shutdown interrupts workers; send what we have and keep draining
+                Thread.interrupted();
+            }
+            if (!batch.isEmpty()) {
+                awaitChannelLimit(batch.size());
+                deliver(batch);
+                batch.clear();
+            }
+        }
+        shard.failDelayed();
+    }
+    
+    // Waits out the channel limit on the worker, which slows the whole channel as intended
+    private void awaitChannelLimit(int permits) {
+        if (channelLimit == null) {
+            return;
+        }
+        long wait = channelLimit.reserve(permits);
+        if (wait > 0) {
+            delayedByChannel.add(permits);
+            throttleNanos.add(wait);
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    // One provider call for the whole batch; a failure fails every message in it
+    private void deliver(List<Delivery> batch) {
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        for (Delivery delivery : batch) {
+            int level = delivery.priority.ordinal();
+            long wait = started - delivery.queuedAt;
+            dequeuedByPriority[level].increment();
+            queueWaitNanos[level].add(wait);
+            maxQueueWaitNanos.accumulateAndGet(level, wait, Math::max);
+        }
+        // Late messages are dropped here, after any throttling wait and before the provider is paid for them
+        for (Iterator<Delivery> it = batch.iterator(); it.hasNext(); ) {
+            Delivery delivery = it.next();
+            if (delivery.deadlineMillis < now) {
+                it.remove();
+                expire(delivery);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<String> messages = new ArrayList<>(batch.size());
+        for (Delivery delivery : batch) {
+            messages.add(delivery.message);
+            delivery.attempts++;
+        }
+        attempted.add(batch.size());
+        Throwable failure = null;
+        try {
+            if (messages.size() == 1) {
+                channel.send(messages.get(0));
+            } else {
+                channel.sendAll(messages);
+            }
+        } catch (Throwable t) {
+            // Errors too: escaping here would end the shard's only worker and strand its queue
+            failure = t;
+        }
+        long finished = System.nanoTime();
+        sendCalls.increment();
+        sendNanos.add(finished - started);
+        for (Delivery delivery : batch) {
+            if (failure == null) {
+                delivered.increment();
+                delivery.result.complete(null);
+                maxLatencyNanos.accumulateAndGet(finished - delivery.createdAt, Math::max);
+            } else if (!scheduleRetry(delivery)) {
+                fail(delivery, failure);
+            }
+        }
+    }
+    
+    // Schedules the next attempt unless attempts are used up or the timer has stopped
+    private boolean scheduleRetry(Delivery delivery) {
+        if (retryTimer == null || delivery.attempts >= maxAttempts) {
+            return false;
+        }
+        long backoff = Math.min(retryMaxDelayMillis, retryBaseDelayMillis << Math.min(delivery.attempts - 1, 30));
+        // Equal jitter: half the backoff is fixed, half random, so a failed batch does not retry in lockstep
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        try {
+            retryTimer.schedule(() -> requeue(delivery), delay, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            return false;
+        }
+        retried.increment();
+        return true;
+    }
+    
+    // Runs on the timer thread, so it never blocks: a full queue counts as another failed attempt
+    private void requeue(Delivery delivery) {
+        UndeliveredNotificationException shutDown = new UndeliveredNotificationException(
+                "Dispatcher for " + channel.getType() + " shut down before retrying");
+        if (!running) {
+            fail(delivery, shutDown);
+            return;
+        }
+        if (delivery.deadlineMillis < System.currentTimeMillis()) {
+            expire(delivery);
+            return;
+        }
+        delivery.queuedAt = System.nanoTime();
+        PriorityLevelQueue<Delivery> queue = queueFor(delivery);
+        if (queue.offer(delivery)) {
+            if (!running && queue.remove(delivery)) {
+                fail(delivery, shutDown);
+            }
+            return;
+        }
+        delivery.attempts++;
+        if (!scheduleRetry(delivery)) {
+            fail(delivery, new IllegalStateException("Queue for " + channel.getType() + " is full"));
+        }
+    }
+    
+    private void expire(Delivery delivery) {
+        expired.increment();
+        delivery.result.completeExceptionally(new IllegalStateException(
+                "Deadline passed before the " + channel.getType() + " message was sent"));
+    }
+    
+    private void fail(Delivery delivery, Throwable cause) {
+        failed.increment();
+        delivery.result.completeExceptionally(cause);
+    }
+    
+    /**
+     * Stops accepting messages and waits for the workers to send what is already queued.
+     * Whatever is still queued, held for a recipient's limit or waiting in a digest when the
+     * timeout runs out is failed with {@link UndeliveredNotificationException}.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        if (delayer != null) {
+            // Delayed messages still fire and are failed as shut down
+            delayer.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (DispatchShard shard : shards) {
+            Delivery leftover;
+            while ((leftover = shard.queue().poll()) != null) {
+                leftover.result.completeExceptionally(new UndeliveredNotificationException(
+                        "Dispatcher for " + channel.getType() + " shut down before sending"));
+            }
+            // A worker still busy past the timeout may never come back for these
+            shard.failParked();
+        }
+    }
+    
+    public String getType() { return channel.getType(); }
+    public int getQueueDepth() {
+        int depth = 0;
+        for (DispatchShard shard : shards) {
+            depth += shard.queue().size();
+        }
+        return depth;
+    }
+    
+    public boolean hasRecipientAffinity() { return shards.length > 1; }
+    public long getDelivered() { return delivered.sum(); }
+    public long getFailed() { return failed.sum(); }
+    public long getDropped() { return dropped.sum(); }
+    public long getRejected() { return rejected.sum(); }
+    public long getSendCalls() { return sendCalls.sum(); }
+    public long getRetried() { return retried.sum(); }
+    public long getExpired() { return expired.sum(); }
+    public NotificationPriority getDefaultPriority() { return defaultPriority; }
+    public long getDelayedByChannel() { return delayedByChannel.sum(); }
+    
+    public long getDigestsSent() {
+        long sent = 0;
+        for (DispatchShard shard : shards) {
+            sent += shard.getDigestsSent();
+        }
+        return sent;
+    }
+    
+    public long getDigestedMessages() {
+        long digested = 0;
+        for (DispatchShard shard : shards) {
+            digested += shard.getDigestedMessages();
+        }
+        return digested;
+    }
+    
+    public long getDelayedByRecipient() {
+        long delayed = delayedByRecipient.sum();
+        for (DispatchShard shard : shards) {
+            delayed += shard.getDelayedByRecipient();
+        }
+        return delayed;
+    }
+    
+    public Map<String, Object> getStats() {
+        long sent = attempted.sum();
+        long calls = sendCalls.sum();
+        long dequeued = 0;
+        long waitNanos = 0;
+        Map<String, Object> byPriority = new LinkedHashMap<>();
+        for (NotificationPriority priority : PRIORITIES) {
+            int level = priority.ordinal();
+            long count = dequeuedByPriority[level].sum();
+            long wait = queueWaitNanos[level].sum();
+            dequeued += count;
+            waitNanos += wait;
+            Map<String, Object> levelStats = new LinkedHashMap<>();
+            int levelDepth = 0;
+            for (DispatchShard shard : shards) {
+                levelDepth += shard.queue().size(level);
+            }
+            levelStats.put("queueDepth", levelDepth);
+            levelStats.put("dequeued", count);
+            levelStats.put("avgQueueWaitMs", count == 0 ? 0.0 : wait / 1e6 / count);
+            levelStats.put("maxQueueWaitMs", maxQueueWaitNanos.get(level) / 1e6);
+            byPriority.put(priority.name(), levelStats);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("policy", policy.name());
+        stats.put("defaultPriority", defaultPriority.name());
+        stats.put("workers", workers.size());
+        stats.put("batchSize", batchSize);
+        int depth = 0;
+        int capacity = 0;
+        int trackedRecipients = recipientLimits.size();
+        for (DispatchShard shard : shards) {
+            depth += shard.queue().size();
+            capacity += shard.queue().size() + shard.queue().remainingCapacity();
+            trackedRecipients += shard.getTrackedRecipients();
+        }
+        stats.put("recipientAffinity", shards.length > 1);
+        stats.put("queueDepth", depth);
+        stats.put("queueCapacity", capacity);
+        stats.put("enqueued", enqueued.sum());
+        stats.put("delivered", delivered.sum());
+        stats.put("failed", failed.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("retried", retried.sum());
+        stats.put("expired", expired.sum());
+        stats.put("digestsSent", getDigestsSent());
+        stats.put("digestedMessages", getDigestedMessages());
+        stats.put("maxAttempts", maxAttempts);
+        stats.put("delayedByChannel", delayedByChannel.sum());
+        stats.put("delayedByRecipient", getDelayedByRecipient());
+        stats.put("throttleWaitMs", throttleNanos.sum() / 1e6);
+        stats.put("trackedRecipients", trackedRecipients);
+        stats.put("sendCalls", calls);
+        stats.put("avgBatchSize", calls == 0 ? 0.0 : (double) sent / calls);
+        stats.put("avgQueueWaitMs", dequeued == 0 ? 0.0 : waitNanos / 1e6 / dequeued);
+        stats.put("priorities", byPriority);
+        stats.put("avgSendMs", calls == 0 ? 0.0 : sendNanos.sum() / 1e6 / calls);
+        stats.put("maxLatencyMs", maxLatencyNanos.get() / 1e6);
+        return stats;
+    }
+}
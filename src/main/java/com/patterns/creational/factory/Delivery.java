@@ -0,0 +1,31 @@
+package com.patterns.creational.factory;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A message on its way through a {@link ChannelDispatcher}, with the future its sender holds.
+ */
+class Delivery {
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+    
+    final String recipient;
+    final String message;
+    final NotificationPriority priority;
+    // Wall-clock epoch millis, since callers give deadlines as instants
+    final long deadlineMillis;
+    final long createdAt = System.nanoTime();
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    // Only touched by the thread currently holding the delivery; queues and the timer hand it over
+    long queuedAt = createdAt;
+    int attempts;
+    // When a message held back by its recipient's limit may be sent, and its place among those due together
+    long readyAt;
+    long heldOrder;
+    
+    Delivery(String recipient, String message, NotificationPriority priority, long deadlineMillis) {
+        this.recipient = recipient;
+        this.message = message;
+        this.priority = priority;
+        this.deadlineMillis = deadlineMillis;
+    }
+}
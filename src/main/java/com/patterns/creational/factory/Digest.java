@@ -0,0 +1,47 @@
+package com.patterns.creational.factory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One recipient's messages waiting to be merged into a single message.
+ * Owned by the {@link DispatchShard} worker that opened it.
+ */
+class Digest {
+    final String recipient;
+    final long flushAt;
+    final List<Delivery> members = new ArrayList<>();
+    boolean flushed;
+    
+    Digest(String recipient, long flushAt) {
+        this.recipient = recipient;
+        this.flushAt = flushAt;
+    }
+    
+    /**
+     * One message built by {@code format} from the members' messages, at the most urgent
+     * member's priority. Its outcome becomes every member's outcome.
+     */
+    Delivery merge(Function<List<String>, String> format) {
+        List<String> messages = new ArrayList<>(members.size());
+        NotificationPriority priority = NotificationPriority.LOW;
+        for (Delivery member : members) {
+            messages.add(member.message);
+            if (member.priority.compareTo(priority) < 0) {
+                priority = member.priority;
+            }
+        }
+        Delivery merged = new Delivery(recipient, format.apply(messages), priority, Delivery.NO_DEADLINE);
+        merged.result.whenComplete((sent, error) -> {
+            for (Delivery member : members) {
+                if (error == null) {
+                    member.result.complete(null);
+                } else {
+                    member.result.completeExceptionally(error);
+                }
+            }
+        });
+        return merged;
+    }
+}
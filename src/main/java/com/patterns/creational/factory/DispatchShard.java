@@ -0,0 +1,196 @@
+package com.patterns.creational.factory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A {@link ChannelDispatcher} queue and, with recipient affinity, the state of the
+ * recipients routed to it: their rate limits, the messages held until a recipient has a
+ * token, and open digests. Everything except the queue, the parked set and the counters
+ * is only touched by the shard's single worker thread.
+ */
+class DispatchShard {
+    private final PriorityLevelQueue<Delivery> queue;
+    private final String channelType;
+    private final int batchSize;
+    // Recipient limits for this worker's recipients; null when they are not limited here
+    private final Map<String, TokenBucket> recipients;
+    private final double recipientRate;
+    private final int recipientBurst;
+    private final long digestWindowNanos;
+    private final int digestMaxMessages;
+    private final Function<List<String>, String> digestFormat;
+    private final PriorityQueue<Delivery> held = new PriorityQueue<>((a, b) -> a.readyAt != b.readyAt
+            ? Long.signum(a.readyAt - b.readyAt)
+            : Long.compare(a.heldOrder, b.heldOrder));
+    private long heldCount;
+    private int seenEvictionGeneration;
+    private volatile int trackedRecipients;
+    private final Map<String, Digest> digests = new HashMap<>();
+    // Open digests by flush time; the window is fixed, so opening order is flush order
+    private final ArrayDeque<Digest> digestOrder = new ArrayDeque<>();
+    // Messages held or in an open digest, which shutdown fails if the worker outlives its timeout
+    private final Set<Delivery> parked = ConcurrentHashMap.newKeySet();
+    private final LongAdder delayedByRecipient = new LongAdder();
+    private final LongAdder digestsSent = new LongAdder();
+    private final LongAdder digestedMessages = new LongAdder();
+    
+    /**
+     * A recipient rate of 0 leaves recipients unlimited here, and a digest window of 0 turns
+     * digests off.
+     */
+    DispatchShard(PriorityLevelQueue<Delivery> queue, String channelType, int batchSize,
+                  double recipientRate, int recipientBurst,
+                  long digestWindowNanos, int digestMaxMessages, Function<List<String>, String> digestFormat) {
+        this.queue = queue;
+        this.channelType = channelType;
+        this.batchSize = batchSize;
+        this.recipients = recipientRate > 0 ? new HashMap<>() : null;
+        this.recipientRate = recipientRate;
+        this.recipientBurst = recipientBurst;
+        this.digestWindowNanos = digestWindowNanos;
+        this.digestMaxMessages = digestMaxMessages;
+        this.digestFormat = digestFormat;
+    }
+    
+    PriorityLevelQueue<Delivery> queue() { return queue; }
+    boolean hasOpenDigests() { return !digestOrder.isEmpty(); }
+    int getTrackedRecipients() { return trackedRecipients; }
+    long getDelayedByRecipient() { return delayedByRecipient.sum(); }
+    long getDigestsSent() { return digestsSent.sum(); }
+    long getDigestedMessages() { return digestedMessages.sum(); }
+    
+    // Adds the message to its recipient's digest, to the batch, or holds it until its recipient has a token
+    void admit(Delivery delivery, List<Delivery> batch) {
+        if (digestWindowNanos > 0 && delivery.recipient != null && delivery.attempts == 0
+                && delivery.deadlineMillis == Delivery.NO_DEADLINE
+                && delivery.priority.compareTo(NotificationPriority.NORMAL) >= 0) {
+            Digest digest = digests.get(delivery.recipient);
+            if (digest == null) {
+                digest = new Digest(delivery.recipient, System.nanoTime() + digestWindowNanos);
+                digests.put(delivery.recipient, digest);
+                digestOrder.addLast(digest);
+            }
+            digest.members.add(delivery);
+            parked.add(delivery);
+            if (digest.members.size() >= digestMaxMessages) {
+                flush(digest, batch);
+            }
+            return;
+        }
+        admitLimited(delivery, batch);
+    }
+    
+    private void admitLimited(Delivery delivery, List<Delivery> batch) {
+        if (recipients == null || delivery.recipient == null || delivery.attempts > 0) {
+            batch.add(delivery);
+            return;
+        }
+        TokenBucket bucket = recipients.get(delivery.recipient);
+        if (bucket == null) {
+            bucket = new TokenBucket(recipientRate, recipientBurst);
+            recipients.put(delivery.recipient, bucket);
+            trackedRecipients = recipients.size();
+        }
+        long wait = bucket.reserve(1);
+        long now = System.nanoTime();
+        releaseDue(batch, now);
+        // Anything still held and due goes first, so a recipient's messages keep their order
+        if (wait == 0 && batch.size() < batchSize && (held.isEmpty() || held.peek().readyAt - now > 0)) {
+            batch.add(delivery);
+            return;
+        }
+        if (wait > 0) {
+            delayedByRecipient.increment();
+        }
+        delivery.readyAt = now + wait;
+        delivery.heldOrder = heldCount++;
+        held.add(delivery);
+        parked.add(delivery);
+    }
+    
+    void flushDigests(List<Delivery> batch, long now, boolean all) {
+        while (batch.size() < batchSize && !digestOrder.isEmpty()) {
+            Digest oldest = digestOrder.peekFirst();
+            if (!oldest.flushed && !all && oldest.flushAt - now > 0) {
+                return;
+            }
+            digestOrder.pollFirst();
+            if (!oldest.flushed) {
+                flush(oldest, batch);
+            }
+        }
+    }
+    
+    // Replaces the digest's messages with one merged message whose outcome is theirs
+    private void flush(Digest digest, List<Delivery> batch) {
+        digest.flushed = true;
+        digests.remove(digest.recipient);
+        List<Delivery> members = digest.members;
+        parked.removeAll(members);
+        if (members.size() == 1) {
+            admitLimited(members.get(0), batch);
+            return;
+        }
+        Delivery merged = digest.merge(digestFormat);
+        digestsSent.increment();
+        digestedMessages.add(members.size());
+        admitLimited(merged, batch);
+    }
+    
+    void releaseDue(List<Delivery> batch, long now) {
+        while (batch.size() < batchSize && !held.isEmpty() && held.peek().readyAt - now <= 0) {
+            Delivery due = held.poll();
+            parked.remove(due);
+            batch.add(due);
+        }
+    }
+    
+    // How long an idle worker may wait for new messages before a held one falls due
+    long idleWaitNanos() {
+        long now = System.nanoTime();
+        long idle = TimeUnit.MILLISECONDS.toNanos(100);
+        if (!held.isEmpty()) {
+            idle = Math.min(idle, held.peek().readyAt - now);
+        }
+        if (!digestOrder.isEmpty()) {
+            idle = Math.min(idle, digestOrder.peekFirst().flushAt - now);
+        }
+        return Math.max(0, idle);
+    }
+    
+    // Forgets refilled recipients once per eviction the dispatcher has asked for
+    void evictIfRequested(int generation) {
+        if (recipients != null && generation != seenEvictionGeneration) {
+            seenEvictionGeneration = generation;
+            recipients.values().removeIf(TokenBucket::isFull);
+            trackedRecipients = recipients.size();
+        }
+    }
+    
+    void failDelayed() {
+        Delivery delivery;
+        while ((delivery = held.poll()) != null) {
+            parked.remove(delivery);
+            delivery.result.completeExceptionally(new UndeliveredNotificationException(
+                    "Dispatcher for " + channelType + " shut down before sending"));
+        }
+    }
+    
+    // Called from shutdown while the worker may still run; completing a future twice is harmless
+    void failParked() {
+        for (Delivery delivery : parked) {
+            parked.remove(delivery);
+            delivery.result.completeExceptionally(new UndeliveredNotificationException(
+                    "Dispatcher for " + channelType + " shut down before sending"));
+        }
+    }
+}
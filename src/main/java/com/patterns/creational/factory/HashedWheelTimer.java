@@ -0,0 +1,238 @@
+package com.patterns.creational.factory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hashed timing wheel: one thread, one array of buckets, any number of timeouts.
+ *
+ * The wheel advances one bucket per tick. A timeout lands in the bucket its deadline
+ * hashes to, with a count of whole wheel revolutions still to wait; each tick only
+ * walks the current bucket. Scheduling and expiry are O(1), and the only allocation
+ * per timeout is the {@link Timeout} itself: callers hand timeouts to the wheel thread
+ * through a lock-free stack linked through the timeouts, and buckets are intrusive
+ * lists, so no queue or list nodes are created.
+ *
+ * Tasks run on the wheel thread and must not block. Deadlines are rounded up to the
+ * next tick. Once {@link #stop()} has taken the incoming stack it leaves a sentinel in
+ * its place, so a timeout is either handed back as unfired or refused, never lost.
+ */
+public class HashedWheelTimer {
+    // Head of the incoming stack once stopped; pushes onto it are refused
+    private static final Timeout STOPPED = new Timeout(null, 0);
+    
+    private final long tickNanos;
+    private final Timeout[] wheel;
+    private final int mask;
+    private final AtomicReference<Timeout> incoming = new AtomicReference<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread worker;
+    private final long startTime = System.nanoTime();
+    private volatile boolean running = true;
+    private long tick;
+    
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize, String threadName) {
+        if (tickDuration <= 0 || wheelSize < 1) {
+            throw new IllegalArgumentException("Invalid wheel: tick=" + tickDuration + " " + unit + ", size=" + wheelSize);
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+    
+    /**
+     * Runs the task on the wheel thread once the delay has passed.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer is stopped");
+        }
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0)));
+        pending.incrementAndGet();
+        Timeout head;
+        do {
+            head = incoming.get();
+            if (head == STOPPED) {
+                pending.decrementAndGet();
+                throw new IllegalStateException("Timer is stopped");
+            }
+            timeout.next = head;
+        } while (!incoming.compareAndSet(head, timeout));
+        return timeout;
+    }
+    
+    private void run() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep = deadline - (System.nanoTime() - startTime);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // stop() interrupts to wake us; the loop condition decides
+                    continue;
+                }
+            }
+            transferIncoming();
+            expire((int) (tick & mask), deadline);
+            tick++;
+        }
+    }
+    
+    // Moves newly scheduled timeouts into their buckets; only the wheel thread touches buckets
+    private void transferIncoming() {
+        Timeout timeout;
+        do {
+            timeout = incoming.get();
+            if (timeout == STOPPED) {
+                return;
+            }
+        } while (!incoming.compareAndSet(timeout, null));
+        while (timeout != null) {
+            Timeout following = timeout.next;
+            if (timeout.isCancelled()) {
+                pending.decrementAndGet();
+            } else {
+                long expiryTick = Math.max(divideRoundingUp(timeout.deadline, tickNanos) - 1, tick);
+                timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+                int bucket = (int) (expiryTick & mask);
+                timeout.prev = null;
+                timeout.next = wheel[bucket];
+                if (wheel[bucket] != null) {
+                    wheel[bucket].prev = timeout;
+                }
+                wheel[bucket] = timeout;
+            }
+            timeout = following;
+        }
+    }
+    
+    private void expire(int bucket, long deadline) {
+        Timeout timeout = wheel[bucket];
+        while (timeout != null) {
+            Timeout following = timeout.next;
+            if (timeout.isCancelled() || (timeout.remainingRounds <= 0 && timeout.deadline <= deadline)) {
+                unlink(bucket, timeout);
+                pending.decrementAndGet();
+                if (timeout.transition(Timeout.EXPIRED)) {
+                    runTask(timeout.task);
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = following;
+        }
+    }
+    
+    private void unlink(int bucket, Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            wheel[bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+    }
+    
+    // Errors included: the wheel thread is the only one, and every pending timeout depends on it
+    private static void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            System.err.println("Timer task failed: " + t);
+        }
+    }
+    
+    private static long divideRoundingUp(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+    
+    /**
+     * Stops the wheel and returns the tasks of every timeout that had not fired yet.
+     */
+    public List<Runnable> stop() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Runnable> unfired = new ArrayList<>();
+        Timeout scheduled = incoming.getAndSet(STOPPED);
+        if (scheduled != STOPPED) {
+            collect(scheduled, unfired);
+        }
+        for (int i = 0; i < wheel.length; i++) {
+            collect(wheel[i], unfired);
+            wheel[i] = null;
+        }
+        pending.set(0);
+        return unfired;
+    }
+    
+    private static void collect(Timeout timeout, List<Runnable> unfired) {
+        while (timeout != null) {
+            if (timeout.transition(Timeout.EXPIRED)) {
+                unfired.add(timeout.task);
+            }
+            timeout = timeout.next;
+        }
+    }
+    
+    public int getPending() { return pending.get(); }
+    public int getWheelSize() { return wheel.length; }
+    public long getTickMillis() { return TimeUnit.NANOSECONDS.toMillis(tickNanos); }
+    
+    /**
+     * Handle for a scheduled task. Its links are owned by the wheel thread.
+     */
+    public static class Timeout {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        // A field updater rather than an AtomicInteger keeps each timeout a single object
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+        
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state = WAITING;
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+        
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+        
+        /**
+         * Cancels the task if it has not run yet; the wheel drops it on its next pass.
+         */
+        public boolean cancel() {
+            return transition(CANCELLED);
+        }
+        
+        private boolean transition(int target) {
+            return STATE.compareAndSet(this, WAITING, target);
+        }
+        
+        public boolean isCancelled() { return state == CANCELLED; }
+        public boolean isExpired() { return state == EXPIRED; }
+    }
+}
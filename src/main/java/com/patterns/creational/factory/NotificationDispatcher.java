@@ -0,0 +1,537 @@
+package com.patterns.creational.factory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Asynchronous front of {@link NotificationFactory}: one {@link ChannelDispatcher}
+ * per registered channel, so callers enqueue and return while each channel's own
+ * workers do the sending.
+ *
+ * Queue capacity, worker count, backpressure policy, batching and rate limits default to
+ * {@code notification.dispatch.*} and can be overridden per channel with
+ * {@code notification.dispatch.<type>.*}.
+ *
+ * Messages addressed to a recipient first pass a duplicate check: an identical
+ * (channel, recipient, message) sent within {@code notification.dedup.window-ms} is
+ * dropped and reported as sent, so upstream retries do not reach the channel twice.
+ * Only a successful send is remembered; a retry arriving while the original is still
+ * in flight shares its outcome, and a retry after a failed send is dispatched again.
+ *
+ * Failed sends are retried on a single {@link HashedWheelTimer} shared by every channel.
+ *
+ * Each message carries a {@link NotificationPriority}, by default the channel's own
+ * (overridable with {@code notification.dispatch.<type>.priority}), and optionally a
+ * deadline after which it is dropped rather than sent late.
+ *
+ * With {@code notification.outbox.path} set, every message is journaled in a
+ * {@link NotificationOutbox} before it is queued and acknowledged once it is sent or has
+ * definitively failed. Messages still queued when the application stops are left
+ * unacknowledged and are dispatched again on the next start.
+ *
+ * {@link #broadcast} sends one message through several channels at once, waiting on
+ * each from its own platform thread, so the caller waits for the slowest channel rather
+ * than the sum of all of them. The build targets Java 17, which has no virtual threads.
+ */
+@Component
+public class NotificationDispatcher {
+    
+    @Autowired
+    private NotificationFactory notificationFactory;
+    
+    @Autowired
+    private NotificationTemplates notificationTemplates;
+    
+    @Autowired
+    private Environment environment;
+    
+    @Value("${notification.dispatch.queue-capacity:1000}")
+    private int queueCapacity;
+    
+    @Value("${notification.dispatch.workers:2}")
+    private int workers;
+    
+    @Value("${notification.dispatch.backpressure:block}")
+    private String backpressure;
+    
+    @Value("${notification.dispatch.block-timeout-ms:1000}")
+    private long blockTimeoutMillis;
+    
+    @Value("${notification.dispatch.batch-size:100}")
+    private int batchSize;
+    
+    @Value("${notification.dispatch.linger-ms:5}")
+    private long lingerMillis;
+    
+    // Rates of 0 leave the channel or its recipients unlimited
+    @Value("${notification.dispatch.rate-per-second:0}")
+    private double ratePerSecond;
+    
+    @Value("${notification.dispatch.rate-burst:1}")
+    private int rateBurst;
+    
+    @Value("${notification.dispatch.recipient-rate-per-second:0}")
+    private double recipientRatePerSecond;
+    
+    @Value("${notification.dispatch.recipient-rate-burst:1}")
+    private int recipientRateBurst;
+    
+    // Route messages to workers by recipient, keeping each recipient's messages in order
+    @Value("${notification.dispatch.recipient-affinity:false}")
+    private boolean recipientAffinity;
+    
+    // Merge a recipient's normal and low priority messages over this window; 0 disables digests
+    @Value("${notification.dispatch.digest-window-ms:0}")
+    private long digestWindowMillis;
+    
+    @Value("${notification.dispatch.digest-max-messages:50}")
+    private int digestMaxMessages;
+    
+    @Value("${notification.dispatch.digest-template:{count} new notifications: {messages}}")
+    private String digestTemplate;
+    
+    @Value("${notification.dispatch.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMillis;
+    
+    @Value("${notification.broadcast.timeout-ms:2000}")
+    private long broadcastTimeoutMillis;
+    
+    // Empty keeps the queues in memory only, so queued messages are lost on restart
+    @Value("${notification.outbox.path:}")
+    private String outboxPath;
+    
+    @Value("${notification.outbox.segment-bytes:16777216}")
+    private int outboxSegmentBytes;
+    
+    @Value("${notification.outbox.max-acknowledged-ahead:100000}")
+    private int outboxMaxAcknowledgedAhead;
+    
+    @Value("${notification.dedup.enabled:true}")
+    private boolean dedupEnabled;
+    
+    @Value("${notification.dedup.window-ms:600000}")
+    private long dedupWindowMillis;
+    
+    @Value("${notification.dedup.slices:6}")
+    private int dedupSlices;
+    
+    @Value("${notification.dedup.expected-per-window:1000000}")
+    private long dedupExpectedPerWindow;
+    
+    @Value("${notification.dedup.false-positive-rate:0.001}")
+    private double dedupFalsePositiveRate;
+    
+    @Value("${notification.retry.max-attempts:4}")
+    private int retryMaxAttempts;
+    
+    @Value("${notification.retry.base-delay-ms:100}")
+    private long retryBaseDelayMillis;
+    
+    @Value("${notification.retry.max-delay-ms:10000}")
+    private long retryMaxDelayMillis;
+    
+    @Value("${notification.retry.tick-ms:10}")
+    private long retryTickMillis;
+    
+    @Value("${notification.retry.wheel-size:512}")
+    private int retryWheelSize;
+    
+    private final Map<String, ChannelDispatcher> dispatchers = new LinkedHashMap<>();
+    private HashedWheelTimer retryTimer;
+    private ExecutorService broadcastExecutor;
+    private NotificationOutbox outbox;
+    private volatile boolean stopping;
+    private final LongAdder duplicatesSuppressed = new LongAdder();
+    private RotatingBloomFilter recentMessages;
+    // Recipient messages queued but not yet sent, by tuple hash
+    private final Map<Long, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    void start() {
+        broadcastExecutor = newBroadcastExecutor();
+        retryTimer = new HashedWheelTimer(retryTickMillis, TimeUnit.MILLISECONDS, retryWheelSize, "notify-retry-timer");
+        if (dedupEnabled) {
+            recentMessages = new RotatingBloomFilter(dedupWindowMillis, TimeUnit.MILLISECONDS, dedupSlices,
+                    dedupExpectedPerWindow, dedupFalsePositiveRate);
+        }
+        for (String type : notificationFactory.getTypes()) {
+            String prefix = "notification.dispatch." + type.toLowerCase(Locale.ROOT) + ".";
+            dispatchers.put(type, new ChannelDispatcher.ChannelDispatcherBuilder()
+                    .channel(notificationFactory.createNotification(type))
+                    .queueCapacity(environment.getProperty(prefix + "queue-capacity", Integer.class, queueCapacity))
+                    .workers(environment.getProperty(prefix + "workers", Integer.class, workers))
+                    .backpressure(
+                            BackpressurePolicy.parse(environment.getProperty(prefix + "backpressure", backpressure)),
+                            environment.getProperty(prefix + "block-timeout-ms", Long.class, blockTimeoutMillis))
+                    .batching(
+                            environment.getProperty(prefix + "batch-size", Integer.class, batchSize),
+                            environment.getProperty(prefix + "linger-ms", Long.class, lingerMillis))
+                    .rateLimit(
+                            environment.getProperty(prefix + "rate-per-second", Double.class, ratePerSecond),
+                            environment.getProperty(prefix + "rate-burst", Integer.class, rateBurst))
+                    .recipientRateLimit(
+                            environment.getProperty(prefix + "recipient-rate-per-second", Double.class,
+                                    recipientRatePerSecond),
+                            environment.getProperty(prefix + "recipient-rate-burst", Integer.class, recipientRateBurst))
+                    .retry(retryTimer,
+                            environment.getProperty(prefix + "retry-max-attempts", Integer.class, retryMaxAttempts),
+                            retryBaseDelayMillis, retryMaxDelayMillis)
+                    .defaultPriority(priorityProperty(prefix + "priority"))
+                    .recipientAffinity(environment.getProperty(prefix + "recipient-affinity", Boolean.class,
+                            recipientAffinity))
+                    .digest(
+                            environment.getProperty(prefix + "digest-window-ms", Long.class, digestWindowMillis),
+                            environment.getProperty(prefix + "digest-max-messages", Integer.class, digestMaxMessages),
+                            digestFormat(environment.getProperty(prefix + "digest-template", digestTemplate)))
+                    .build());
+        }
+        if (!outboxPath.isBlank()) {
+            outbox = NotificationOutbox.open(Path.of(outboxPath), outboxSegmentBytes, outboxMaxAcknowledgedAhead);
+            List<NotificationOutbox.Entry> recovered = outbox.recoveredEntries();
+            if (!recovered.isEmpty()) {
+                // Off the startup thread, since a full queue may make each dispatch wait
+                broadcastExecutor.execute(() -> recovered.forEach(this::replay));
+            }
+        }
+    }
+    
+    private static Function<List<String>, String> digestFormat(String template) {
+        NotificationTemplate compiled = NotificationTemplate.compile(template);
+        return messages -> compiled.render(Map.of("count", messages.size(), "messages", String.join("; ", messages)));
+    }
+    
+    private void replay(NotificationOutbox.Entry entry) {
+        if (stopping) {
+            return;
+        }
+        ChannelDispatcher dispatcher = dispatchers.get(entry.getType());
+        if (dispatcher == null) {
+            System.out.println("Outbox entry " + entry.getSequence() + " is for unknown channel "
+                    + entry.getType() + "; discarding it");
+            outbox.acknowledge(entry.getSequence());
+            return;
+        }
+        track(entry.getSequence(), dispatcher.dispatch(entry.getRecipient(), entry.getMessage(),
+                entry.getPriority(), entry.getDeadline()), entry);
+    }
+    
+    private CompletableFuture<Void> send(ChannelDispatcher dispatcher, String recipient, String message,
+                                         NotificationPriority priority, Instant deadline) {
+        if (outbox == null) {
+            return dispatcher.dispatch(recipient, message, priority, deadline);
+        }
+        long sequence = outbox.append(dispatcher.getType(), recipient, message, priority, deadline);
+        return track(sequence, dispatcher.dispatch(recipient, message, priority, deadline), null);
+    }
+    
+    // Acknowledges the entry once its outcome is final. A message that never reached the channel
+    // stays in the outbox if we are stopping, and a replayed one is tried again after a pause.
+    private CompletableFuture<Void> track(long sequence, CompletableFuture<Void> delivery,
+                                          NotificationOutbox.Entry replayed) {
+        delivery.whenComplete((sent, error) -> {
+            boolean undelivered = error instanceof UndeliveredNotificationException
+                    || error != null && error.getCause() instanceof UndeliveredNotificationException;
+            if (!undelivered || (!stopping && replayed == null)) {
+                outbox.acknowledge(sequence);
+            } else if (!stopping) {
+                try {
+                    retryTimer.schedule(() -> {
+                        if (!stopping) {
+                            broadcastExecutor.execute(() -> replay(replayed));
+                        }
+                    }, retryBaseDelayMillis, TimeUnit.MILLISECONDS);
+                } catch (RuntimeException e) {
+                    // Stopped meanwhile; the entry is replayed on the next start
+                }
+            }
+        });
+        return delivery;
+    }
+    
+    private NotificationPriority priorityProperty(String key) {
+        String value = environment.getProperty(key);
+        return value == null || value.isBlank() ? null : NotificationPriority.parse(value);
+    }
+    
+    /**
+     * Queues a message on the channel's dispatcher. Unknown types fail immediately,
+     * as they do in {@link NotificationFactory#createNotification(String)}.
+     */
+    public CompletableFuture<Void> dispatch(String type, String message) {
+        return send(dispatcherFor(type), null, message, null, null);
+    }
+    
+    /**
+     * Queues a message for a recipient, subject to the channel's per-recipient rate limit.
+     */
+    public CompletableFuture<Void> dispatch(String type, String recipient, String message) {
+        return dispatch(type, recipient, message, null, null);
+    }
+    
+    /**
+     * Queues a message with an explicit priority and an optional deadline; the future
+     * fails if the message is still unsent when the deadline passes.
+     */
+    public CompletableFuture<Void> dispatch(String type, String recipient, String message,
+                                            NotificationPriority priority, Instant deadline) {
+        ChannelDispatcher dispatcher = dispatcherFor(type);
+        if (recentMessages == null || recipient == null) {
+            return send(dispatcher, recipient, message, priority, deadline);
+        }
+        long hash = messageHash(dispatcher.getType(), recipient, message);
+        if (recentMessages.mightContain(hash)) {
+            duplicatesSuppressed.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> outcome = new CompletableFuture<>();
+        CompletableFuture<Void> original = inFlight.putIfAbsent(hash, outcome);
+        if (original != null) {
+            duplicatesSuppressed.increment();
+            return original;
+        }
+        // The original may have been sent, remembered and left inFlight since the first check
+        if (recentMessages.mightContain(hash)) {
+            inFlight.remove(hash, outcome);
+            outcome.complete(null);
+            duplicatesSuppressed.increment();
+            return outcome;
+        }
+        CompletableFuture<Void> delivery;
+        try {
+            delivery = send(dispatcher, recipient, message, priority, deadline);
+        } catch (RuntimeException e) {
+            inFlight.remove(hash, outcome);
+            throw e;
+        }
+        // Remembered only once sent, so a rejected, dropped, expired or failed message can be retried
+        delivery.whenComplete((sent, error) -> {
+            if (error == null) {
+                recentMessages.add(hash);
+            }
+            inFlight.remove(hash, outcome);
+            if (error == null) {
+                outcome.complete(null);
+            } else {
+                outcome.completeExceptionally(error);
+            }
+        });
+        return outcome;
+    }
+    
+    /**
+     * Renders a registered {@link NotificationTemplate} and queues the result for the recipient.
+     */
+    public CompletableFuture<Void> dispatchTemplate(String type, String recipient, String template,
+                                                    Map<String, ?> parameters) {
+        return dispatch(type, recipient, notificationTemplates.render(template, parameters));
+    }
+    
+    // 64-bit FNV-1a over the tuple's characters, finished with the MurmurHash3 mixer
+    private static long messageHash(String type, String recipient, String message) {
+        long h = fold(fold(fold(0xcbf29ce484222325L, type), recipient), message);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    private static long fold(long h, String part) {
+        for (int i = 0; i < part.length(); i++) {
+            h = (h ^ part.charAt(i)) * 0x100000001b3L;
+        }
+        // Separator, so ("ab", "c") and ("a", "bc") differ
+        return (h ^ 0xFFFF) * 0x100000001b3L;
+    }
+    
+    /**
+     * Sends the message through every listed channel concurrently using the configured
+     * per-channel timeout. See {@link #broadcast(Collection, String, long)}.
+     */
+    public Map<String, Map<String, Object>> broadcast(Collection<String> types, String message) {
+        return broadcast(types, message, broadcastTimeoutMillis);
+    }
+    
+    /**
+     * Sends the message through every listed channel concurrently and reports, per channel,
+     * whether it was sent within the timeout and how long it took. A channel that times out
+     * may still send the message later; its report only says the caller stopped waiting.
+     */
+    public Map<String, Map<String, Object>> broadcast(Collection<String> types, String message, long timeoutMillis) {
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("Broadcast timeout must be positive: " + timeoutMillis);
+        }
+        Map<String, CompletableFuture<Map<String, Object>>> sends = new LinkedHashMap<>();
+        for (String type : types) {
+            long started = System.nanoTime();
+            // The bound also covers time spent waiting for queue space under the block policy
+            sends.put(type, CompletableFuture
+                    .supplyAsync(() -> sendAndWait(type, message, started, timeoutMillis), broadcastExecutor)
+                    .completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS)
+                    .thenApply(report -> report != null ? report
+                            : report(false, started, "Timed out after " + timeoutMillis + " ms")));
+        }
+        Map<String, Map<String, Object>> reports = new LinkedHashMap<>();
+        sends.forEach((type, send) -> reports.put(type, send.join()));
+        return reports;
+    }
+    
+    // Runs on a broadcast thread, which is free to block on the delivery
+    private Map<String, Object> sendAndWait(String type, String message, long started, long timeoutMillis) {
+        try {
+            dispatch(type, message).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return report(true, started, null);
+        } catch (TimeoutException e) {
+            return report(false, started, "Timed out after " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            return report(false, started, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return report(false, started, "Interrupted");
+        } catch (RuntimeException e) {
+            return report(false, started, e.getMessage());
+        }
+    }
+    
+    private static Map<String, Object> report(boolean success, long started, String error) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("success", success);
+        report.put("latencyMs", (System.nanoTime() - started) / 1e6);
+        if (error != null) {
+            report.put("error", error);
+        }
+        return report;
+    }
+    
+    // Daemon platform threads, since the build targets Java 17; each send mostly waits on its
+    // channel, so the cached pool grows to the widest fan-out and idles back down
+    private static ExecutorService newBroadcastExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "notify-broadcast-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Queues a bulk send such as a campaign. The messages reach the channel in
+     * batches, and the future completes once all of them have been sent.
+     */
+    public CompletableFuture<Void> dispatchAll(String type, Collection<String> messages) {
+        return dispatchAll(type, messages, null);
+    }
+    
+    /**
+     * Queues a bulk send at the given priority, typically {@link NotificationPriority#LOW}
+     * for marketing so it never delays the channel's urgent messages.
+     */
+    public CompletableFuture<Void> dispatchAll(String type, Collection<String> messages,
+                                               NotificationPriority priority) {
+        ChannelDispatcher dispatcher = dispatcherFor(type);
+        CompletableFuture<?>[] deliveries = new CompletableFuture<?>[messages.size()];
+        int i = 0;
+        for (String message : messages) {
+            deliveries[i++] = send(dispatcher, null, message, priority, null);
+        }
+        return CompletableFuture.allOf(deliveries);
+    }
+    
+    public ChannelDispatcher dispatcherFor(String type) {
+        // Resolve through the factory's allocation-free lookup, then key by the registered type
+        return dispatchers.get(notificationFactory.createNotification(type).getType());
+    }
+    
+    public Map<String, Object> getRetryStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxAttempts", retryMaxAttempts);
+        stats.put("baseDelayMs", retryBaseDelayMillis);
+        stats.put("maxDelayMs", retryMaxDelayMillis);
+        stats.put("pending", retryTimer.getPending());
+        stats.put("wheelSize", retryTimer.getWheelSize());
+        stats.put("tickMs", retryTimer.getTickMillis());
+        return stats;
+    }
+    
+    public Map<String, Object> getOutboxStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", outbox != null);
+        if (outbox != null) {
+            stats.put("path", outboxPath);
+            stats.put("pending", outbox.getPending());
+            stats.put("checkpoint", outbox.getCheckpoint());
+            stats.put("acknowledgedAhead", outbox.getAcknowledgedAhead());
+            stats.put("abandoned", outbox.getAbandoned());
+            stats.put("segments", outbox.getSegmentCount());
+            stats.put("recovered", outbox.recoveredEntries().size());
+        }
+        return stats;
+    }
+    
+    public Map<String, Object> getDedupStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", recentMessages != null);
+        stats.put("windowMs", dedupWindowMillis);
+        stats.put("suppressed", duplicatesSuppressed.sum());
+        stats.put("inFlight", inFlight.size());
+        stats.put("filterBytes", recentMessages == null ? 0L : recentMessages.getMemoryBytes());
+        return stats;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        dispatchers.forEach((type, dispatcher) -> stats.put(type, dispatcher.getStats()));
+        return stats;
+    }
+    
+    @Scheduled(fixedDelayString = "${notification.dispatch.recipient-eviction-interval-ms:60000}")
+    public void evictIdleRecipients() {
+        dispatchers.values().forEach(ChannelDispatcher::evictIdleRecipients);
+    }
+    
+    @Scheduled(fixedDelayString = "${notification.outbox.sync-interval-ms:1000}")
+    public void syncOutbox() {
+        if (outbox != null) {
+            outbox.sync();
+        }
+    }
+    
+    @PreDestroy
+    void stop() {
+        stopping = true;
+        broadcastExecutor.shutdownNow();
+        // Pending retries get one last attempt while the channels drain
+        retryTimer.stop().forEach(Runnable::run);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        for (ChannelDispatcher dispatcher : dispatchers.values()) {
+            dispatcher.shutdown(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+}
@@ -1,51 +1,172 @@
 package com.patterns.creational.factory;
 
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Factory Pattern - Creates objects without specifying exact classes
  */
 public interface Notification {
     void send(String message);
+    
+    /**
+     * Sends several messages in one provider call. Channels whose provider has no
+     * bulk API can keep this default, which sends them one by one.
+     */
+    default void sendAll(Collection<String> messages) {
+        for (String message : messages) {
+            send(message);
+        }
+    }
+    
+    /**
+     * Channel name the factory looks this notification up by, matched case-insensitively.
+     */
+    String getType();
+    
+    /**
+     * Priority of this channel's messages when the sender does not give one.
+     */
+    default NotificationPriority getPriority() {
+        return NotificationPriority.NORMAL;
+    }
 }
 
 @Component
 class EmailNotification implements Notification {
+    @Override
+    public String getType() {
+        return "email";
+    }
+    
     @Override
     public void send(String message) {
         System.out.println("Email sent: " + message);
     }
+    
+    @Override
+    public void sendAll(Collection<String> messages) {
+        System.out.println("Email batch sent (" + messages.size() + " messages): " + messages);
+    }
 }
 
 @Component
 class SMSNotification implements Notification {
+    @Override
+    public String getType() {
+        return "sms";
+    }
+    
     @Override
     public void send(String message) {
         System.out.println("SMS sent: " + message);
     }
+    
+    @Override
+    public void sendAll(Collection<String> messages) {
+        System.out.println("SMS batch sent (" + messages.size() + " messages): " + messages);
+    }
 }
 
 @Component
 class PushNotification implements Notification {
+    @Override
+    public String getType() {
+        return "push";
+    }
+    
+    @Override
+    public NotificationPriority getPriority() {
+        return NotificationPriority.HIGH;
+    }
+    
     @Override
     public void send(String message) {
         System.out.println("Push notification sent: " + message);
     }
+    
+    @Override
+    public void sendAll(Collection<String> messages) {
+        System.out.println("Push notification batch sent (" + messages.size() + " messages): " + messages);
+    }
 }
 
+/**
+ * Flyweight registry of notification channels.
+ * Channels are stateless beans, so one shared instance per type is handed out instead
+ * of a new object per call. The registry is built once from every {@link Notification}
+ * bean in the context; a new channel plugs in by being declared as a bean.
+ *
+ * Lookup is an open-addressed table hashed on case-folded characters and compared with
+ * {@link String#equalsIgnoreCase}, so resolving a type allocates nothing.
+ */
 @Component
 public class NotificationFactory {
     
+    @Autowired
+    private List<Notification> channels;
+    
+    private String[] types;
+    private Notification[] notifications;
+    private int mask;
+    
+    @PostConstruct
+    void buildRegistry() {
+        // At most half full, so probe sequences stay short and always hit an empty slot
+        int capacity = Integer.highestOneBit(Math.max(channels.size(), 1) * 4 - 1) << 1;
+        types = new String[capacity];
+        notifications = new Notification[capacity];
+        mask = capacity - 1;
+        for (Notification channel : channels) {
+            int slot = slotFor(channel.getType());
+            if (types[slot] != null) {
+                throw new IllegalStateException("Duplicate notification type: " + channel.getType());
+            }
+            types[slot] = channel.getType();
+            notifications[slot] = channel;
+        }
+    }
+    
+    /**
+     * Returns the shared channel for the type, ignoring case.
+     */
     public Notification createNotification(String type) {
-        switch (type.toLowerCase()) {
-            case "email":
-                return new EmailNotification();
-            case "sms":
-                return new SMSNotification();
-            case "push":
-                return new PushNotification();
-            default:
-                throw new IllegalArgumentException("Unknown notification type: " + type);
+        Notification notification = notifications[slotFor(type)];
+        if (notification == null) {
+            throw new IllegalArgumentException("Unknown notification type: " + type);
+        }
+        return notification;
+    }
+    
+    // Slot holding the type, or the empty slot where it would go
+    private int slotFor(String type) {
+        int slot = foldedHash(type) & mask;
+        while (types[slot] != null && !types[slot].equalsIgnoreCase(type)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private static int foldedHash(String type) {
+        int h = 0;
+        for (int i = 0; i < type.length(); i++) {
+            // Same folding as equalsIgnoreCase, so equal-ignoring-case types hash alike
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(type.charAt(i)));
+        }
+        return h ^ (h >>> 16);
+    }
+    
+    public List<String> getTypes() {
+        List<String> registered = new ArrayList<>();
+        for (Notification channel : channels) {
+            registered.add(channel.getType());
         }
+        return Collections.unmodifiableList(registered);
     }
 }
@@ -0,0 +1,465 @@
+package com.patterns.creational.factory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable outbox for notifications: a journal of memory-mapped segment files plus a
+ * checkpoint, giving at-least-once delivery across restarts without a broker.
+ *
+ * {@link #append} copies the entry into the active segment's mapping under a short lock,
+ * with no system call, so it is cheap enough for the request path. Entries survive a
+ * process crash as soon as they are in the mapping; {@link #sync()} also makes them
+ * survive an OS crash. Once an entry is handled, {@link #acknowledge(long)} marks it.
+ * The checkpoint is the highest sequence below which every entry is acknowledged, so
+ * out-of-order acknowledgements from several workers are held until the gap closes.
+ * Segments wholly below the checkpoint are deleted.
+ *
+ * {@link #open} replays the segments and keeps every entry past the checkpoint for
+ * {@link #recoveredEntries()}. Entries acknowledged out of order just before a crash
+ * are replayed again, which at-least-once delivery allows.
+ *
+ * An entry that is never acknowledged would hold the checkpoint, and every segment
+ * after it, forever. Once more than {@code maxAcknowledgedAhead} later entries are
+ * waiting on it, the oldest gap is abandoned: the checkpoint moves past it and it is
+ * counted in {@link #getAbandoned()}. It is still sent if its delivery completes, but
+ * is no longer replayed after a crash.
+ *
+ * Locks are {@link ReentrantLock}s rather than monitors: appends run on the dispatch
+ * path, including virtual threads, and a segment roll does file IO under the lock.
+ *
+ * Record layout, as in the storage engine's log: {@code [int bodyLength][int crc32][body]},
+ * with the length written last. The body is {@code [long sequence][long deadlineMillis]
+ * [byte priority][type][recipient][message]}, and each string is an int length plus
+ * UTF-8 bytes. A length of -1 marks a null recipient.
+ */
+public class NotificationOutbox implements AutoCloseable {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOCK_FILE = "LOCK";
+    private static final int HEADER_SIZE = 8;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int DEFAULT_MAX_ACKNOWLEDGED_AHEAD = 100_000;
+    private static final NotificationPriority[] PRIORITIES = NotificationPriority.values();
+    
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxAcknowledgedAhead;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock ackLock = new ReentrantLock();
+    // Oldest first; the last one is the active segment
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final List<Entry> recovered = new ArrayList<>();
+    private final Set<Long> acknowledgedAhead = new HashSet<>();
+    private FileChannel lockChannel;
+    private FileChannel checkpointChannel;
+    private MappedByteBuffer checkpointBuffer;
+    private MappedByteBuffer active;
+    private FileChannel activeChannel;
+    private int writePosition;
+    private long nextSequence;
+    private volatile long checkpoint;
+    private volatile long abandoned;
+    private volatile boolean closed;
+    
+    private NotificationOutbox(Path directory, int segmentBytes, int maxAcknowledgedAhead) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxAcknowledgedAhead = maxAcknowledgedAhead;
+    }
+    
+    /**
+     * Opens the outbox in the given directory, replaying any segments left by a previous run.
+     */
+    public static NotificationOutbox open(Path directory, int segmentBytes) {
+        return open(directory, segmentBytes, DEFAULT_MAX_ACKNOWLEDGED_AHEAD);
+    }
+    
+    /**
+     * Opens the outbox, abandoning an unacknowledged entry once more than
+     * {@code maxAcknowledgedAhead} later entries have been acknowledged.
+     */
+    public static NotificationOutbox open(Path directory, int segmentBytes, int maxAcknowledgedAhead) {
+        if (segmentBytes < 4096 || maxAcknowledgedAhead < 1) {
+            throw new IllegalArgumentException("Invalid outbox settings: segmentBytes=" + segmentBytes
+                    + " (at least 4096), maxAcknowledgedAhead=" + maxAcknowledgedAhead);
+        }
+        NotificationOutbox outbox = new NotificationOutbox(directory, segmentBytes, maxAcknowledgedAhead);
+        try {
+            Files.createDirectories(directory);
+            outbox.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (outbox.lockChannel.tryLock() == null) {
+                throw new IllegalStateException("Outbox directory is already in use: " + directory);
+            }
+            outbox.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            outbox.checkpointBuffer = outbox.checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            outbox.checkpoint = outbox.checkpointBuffer.getLong(0);
+            outbox.recover();
+        } catch (IOException e) {
+            outbox.closeQuietly();
+            throw new UncheckedIOException("Could not open notification outbox in " + directory, e);
+        } catch (RuntimeException e) {
+            outbox.closeQuietly();
+            throw e;
+        }
+        return outbox;
+    }
+    
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        long lastSequence = checkpoint;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Segment segment = new Segment(file, Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            segments.addLast(segment);
+            lastSequence = Math.max(lastSequence, replay(segment, file == files.get(files.size() - 1)));
+        }
+        nextSequence = lastSequence + 1;
+        if (active == null) {
+            roll(0);
+        }
+        deleteAcknowledgedSegments();
+        if (!recovered.isEmpty()) {
+            System.out.println("Outbox recovered " + recovered.size() + " unacknowledged notifications");
+        }
+    }
+    
+    // Collects unacknowledged entries; the last segment stays mapped for appending. Returns its last sequence.
+    private long replay(Segment segment, boolean last) throws IOException {
+        FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        long lastSequence = 0;
+        int position = 0;
+        boolean torn = false;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int bodyLength = buffer.getInt(position);
+            if (bodyLength == 0) {
+                break;
+            }
+            if (bodyLength < 0 || position + HEADER_SIZE + bodyLength > buffer.capacity()
+                    || checksum(buffer, position + HEADER_SIZE, bodyLength) != buffer.getInt(position + 4)) {
+                torn = true;
+                break;
+            }
+            Entry entry = decode(buffer, position + HEADER_SIZE);
+            if (entry.sequence > checkpoint) {
+                recovered.add(entry);
+            }
+            lastSequence = entry.sequence;
+            position += HEADER_SIZE + bodyLength;
+        }
+        if (!last) {
+            channel.close();
+            return lastSequence;
+        }
+        if (torn) {
+            for (int i = position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            System.out.println("Outbox recovery discarded a torn record at offset " + position + " of " + segment.path);
+        }
+        active = buffer;
+        activeChannel = channel;
+        writePosition = position;
+        return lastSequence;
+    }
+    
+    /**
+     * Journals a notification and returns its sequence, to be acknowledged once it is handled.
+     */
+    public long append(String type, String recipient, String message, NotificationPriority priority, Instant deadline) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        byte[] recipientBytes = recipient == null ? null : recipient.getBytes(StandardCharsets.UTF_8);
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 8 + 8 + 1 + 4 + typeBytes.length + 4 + (recipientBytes == null ? 0 : recipientBytes.length)
+                + 4 + messageBytes.length;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Notification outbox is closed");
+            }
+            if (writePosition + HEADER_SIZE + bodyLength > active.capacity()) {
+                roll(HEADER_SIZE + bodyLength);
+            }
+            long sequence = nextSequence++;
+            int position = writePosition;
+            int at = position + HEADER_SIZE;
+            active.putLong(at, sequence);
+            active.putLong(at + 8, deadline == null ? NO_DEADLINE : deadline.toEpochMilli());
+            active.put(at + 16, (byte) (priority == null ? -1 : priority.ordinal()));
+            at = putBytes(active, at + 17, typeBytes);
+            at = putBytes(active, at, recipientBytes);
+            putBytes(active, at, messageBytes);
+            active.putInt(position + 4, checksum(active, position + HEADER_SIZE, bodyLength));
+            // Length goes in last: replay treats a record without one as the end of the segment
+            active.putInt(position, bodyLength);
+            writePosition = position + HEADER_SIZE + bodyLength;
+            return sequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+    
+    private static int putBytes(MappedByteBuffer buffer, int at, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(at, -1);
+            return at + 4;
+        }
+        buffer.putInt(at, bytes.length);
+        buffer.put(at + 4, bytes);
+        return at + 4 + bytes.length;
+    }
+    
+    // Starts a new segment named after the next sequence; called with the append lock held
+    private void roll(int recordSize) {
+        try {
+            if (activeChannel != null) {
+                active.force();
+                activeChannel.close();
+            }
+            Path file = directory.resolve(String.format("%020d%s", nextSequence, SEGMENT_SUFFIX));
+            activeChannel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentBytes, recordSize));
+            writePosition = 0;
+            segments.addLast(new Segment(file, nextSequence));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start a new outbox segment", e);
+        }
+        deleteAcknowledgedSegments();
+    }
+    
+    /**
+     * Marks the entry as handled and advances the checkpoint over every acknowledged entry before it.
+     */
+    public void acknowledge(long sequence) {
+        ackLock.lock();
+        try {
+            // Late acknowledgements after close are replayed instead, which is still at-least-once
+            if (closed || sequence <= checkpoint) {
+                return;
+            }
+            if (sequence != checkpoint + 1) {
+                acknowledgedAhead.add(sequence);
+                // Too much is waiting on the oldest gap: give it up rather than hold the checkpoint forever
+                while (acknowledgedAhead.size() > maxAcknowledgedAhead) {
+                    abandoned++;
+                    System.out.println("Outbox entry " + (checkpoint + 1) + " is still unacknowledged after "
+                            + maxAcknowledgedAhead + " later entries; it will not be replayed after a restart");
+                    advanceCheckpoint(checkpoint + 1);
+                }
+                return;
+            }
+            advanceCheckpoint(sequence);
+        } finally {
+            ackLock.unlock();
+        }
+    }
+    
+    // Moves the checkpoint to the given sequence and over the acknowledged run after it; called with the ack lock held
+    private void advanceCheckpoint(long sequence) {
+        long next = sequence;
+        while (acknowledgedAhead.remove(next + 1)) {
+            next++;
+        }
+        checkpoint = next;
+        checkpointBuffer.putLong(0, next);
+    }
+    
+    /**
+     * Entries that were not acknowledged before the outbox was last closed, oldest first.
+     */
+    public List<Entry> recoveredEntries() {
+        return Collections.unmodifiableList(recovered);
+    }
+    
+    /**
+     * Flushes the active segment and the checkpoint to disk and deletes acknowledged segments.
+     */
+    public void sync() {
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            active.force();
+            checkpointBuffer.force();
+            deleteAcknowledgedSegments();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+    
+    // A segment can go once the one after it starts at or below the checkpoint; the active one always stays
+    private void deleteAcknowledgedSegments() {
+        while (segments.size() > 1) {
+            Segment oldest = segments.pollFirst();
+            if (segments.peekFirst().firstSequence > checkpoint + 1) {
+                segments.addFirst(oldest);
+                return;
+            }
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                System.out.println("Could not delete outbox segment " + oldest.path + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    public long getCheckpoint() { return checkpoint; }
+    public long getAbandoned() { return abandoned; }
+    
+    public int getAcknowledgedAhead() {
+        ackLock.lock();
+        try {
+            return acknowledgedAhead.size();
+        } finally {
+            ackLock.unlock();
+        }
+    }
+    
+    public long getPending() {
+        appendLock.lock();
+        try {
+            return nextSequence - 1 - checkpoint;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+    
+    public int getSegmentCount() {
+        appendLock.lock();
+        try {
+            return segments.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+    
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                active.force();
+                checkpointBuffer.force();
+                activeChannel.close();
+                checkpointChannel.close();
+                lockChannel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close notification outbox", e);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+    
+    private void closeQuietly() {
+        try {
+            for (FileChannel channel : new FileChannel[]{activeChannel, checkpointChannel, lockChannel}) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        } catch (IOException ignored) {
+            // Already failing to open
+        }
+    }
+    
+    private static Entry decode(MappedByteBuffer buffer, int at) {
+        long sequence = buffer.getLong(at);
+        long deadlineMillis = buffer.getLong(at + 8);
+        byte priority = buffer.get(at + 16);
+        int[] cursor = {at + 17};
+        String type = readString(buffer, cursor);
+        String recipient = readString(buffer, cursor);
+        String message = readString(buffer, cursor);
+        return new Entry(sequence, type, recipient, message,
+                priority < 0 ? null : PRIORITIES[priority],
+                deadlineMillis == NO_DEADLINE ? null : Instant.ofEpochMilli(deadlineMillis));
+    }
+    
+    private static String readString(MappedByteBuffer buffer, int[] cursor) {
+        int length = buffer.getInt(cursor[0]);
+        cursor[0] += 4;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(cursor[0], bytes);
+        cursor[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static int checksum(MappedByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+    
+    private static class Segment {
+        private final Path path;
+        private final long firstSequence;
+        
+        Segment(Path path, long firstSequence) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+        }
+    }
+    
+    /**
+     * A journaled notification, as replayed after a restart.
+     */
+    public static class Entry {
+        private final long sequence;
+        private final String type;
+        private final String recipient;
+        private final String message;
+        private final NotificationPriority priority;
+        private final Instant deadline;
+        
+        Entry(long sequence, String type, String recipient, String message,
+              NotificationPriority priority, Instant deadline) {
+            this.sequence = sequence;
+            this.type = type;
+            this.recipient = recipient;
+            this.message = message;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+        
+        public long getSequence() { return sequence; }
+        public String getType() { return type; }
+        public String getRecipient() { return recipient; }
+        public String getMessage() { return message; }
+        public NotificationPriority getPriority() { return priority; }
+        public Instant getDeadline() { return deadline; }
+    }
+}
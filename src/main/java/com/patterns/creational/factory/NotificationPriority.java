@@ -0,0 +1,28 @@
+package com.patterns.creational.factory;
+
+import java.util.Locale;
+
+/**
+ * How urgently a notification should be sent. Dispatchers always serve the most
+ * urgent queued notification first, oldest first within a priority.
+ */
+public enum NotificationPriority {
+    // One-time passwords, security alerts
+    CRITICAL,
+    // Time-sensitive messages such as push updates
+    HIGH,
+    NORMAL,
+    // Marketing and other bulk sends
+    LOW;
+    
+    /**
+     * Parses property values such as {@code high} or {@code LOW}.
+     */
+    public static NotificationPriority parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown notification priority: " + value, e);
+        }
+    }
+}
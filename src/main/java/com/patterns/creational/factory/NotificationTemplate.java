@@ -0,0 +1,167 @@
+package com.patterns.creational.factory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message template with {@code {name}} placeholders, compiled once into alternating
+ * literal and placeholder parts. <code>&#123;&#123;</code> and <code>&#125;&#125;</code>
+ * stand for literal braces.
+ *
+ * Rendering walks the parts and appends into a per-thread buffer that is reused across
+ * calls, so the only allocation per message is the resulting string. Integers and
+ * longs are appended as digits without boxing them into a string first.
+ */
+public class NotificationTemplate {
+    // Buffers that grew past this are dropped rather than kept per thread
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    
+    private final String source;
+    // literals[i] precedes placeholder i; the last literal follows the last placeholder
+    private final String[] literals;
+    // Index into parameters for every placeholder, so a repeated name is looked up once
+    private final int[] slots;
+    private final String[] parameters;
+    private final int literalLength;
+    
+    private NotificationTemplate(String source, String[] literals, int[] slots, String[] parameters) {
+        this.source = source;
+        this.literals = literals;
+        this.slots = slots;
+        this.parameters = parameters;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+    
+    /**
+     * Parses the template, failing on an empty or unterminated placeholder or a stray closing brace.
+     */
+    public static NotificationTemplate compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<String> parameters = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '}') {
+                if (i + 1 < source.length() && source.charAt(i + 1) == '}') {
+                    literal.append('}');
+                    i += 2;
+                    continue;
+                }
+                throw new IllegalArgumentException("Unmatched '}' at offset " + i + " in template: " + source);
+            }
+            if (c != '{') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if (i + 1 < source.length() && source.charAt(i + 1) == '{') {
+                literal.append('{');
+                i += 2;
+                continue;
+            }
+            int end = source.indexOf('}', i + 1);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated placeholder at offset " + i + " in template: " + source);
+            }
+            String name = source.substring(i + 1, end).trim();
+            if (name.isEmpty() || name.indexOf('{') >= 0) {
+                throw new IllegalArgumentException("Invalid placeholder at offset " + i + " in template: " + source);
+            }
+            int slot = parameters.indexOf(name);
+            if (slot < 0) {
+                slot = parameters.size();
+                parameters.add(name);
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            slots.add(slot);
+            i = end + 1;
+        }
+        literals.add(literal.toString());
+        
+        int[] slotArray = new int[slots.size()];
+        for (int s = 0; s < slotArray.length; s++) {
+            slotArray[s] = slots.get(s);
+        }
+        return new NotificationTemplate(source, literals.toArray(new String[0]), slotArray,
+                parameters.toArray(new String[0]));
+    }
+    
+    /**
+     * Renders with values given in {@link #getParameters()} order.
+     */
+    public String render(Object... values) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        renderTo(buffer, values);
+        String rendered = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return rendered;
+    }
+    
+    /**
+     * Renders with values looked up by parameter name.
+     */
+    public String render(Map<String, ?> values) {
+        return render(valuesOf(values));
+    }
+    
+    /**
+     * Appends the rendered message to the given builder, for callers assembling a larger message.
+     */
+    public void renderTo(StringBuilder out, Object[] values) {
+        if (values.length != parameters.length) {
+            throw new IllegalArgumentException("Template expects " + parameters.length + " values "
+                    + Arrays.toString(parameters) + ", got " + values.length);
+        }
+        out.ensureCapacity(out.length() + literalLength + 16 * slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            appendValue(out, values[slots[i]]);
+        }
+        out.append(literals[slots.length]);
+    }
+    
+    private static void appendValue(StringBuilder out, Object value) {
+        if (value instanceof CharSequence) {
+            out.append((CharSequence) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            out.append(((Number) value).longValue());
+        } else {
+            out.append(value);
+        }
+    }
+    
+    /**
+     * Values from the map in {@link #getParameters()} order; every parameter must be present.
+     */
+    public Object[] valuesOf(Map<String, ?> values) {
+        Object[] ordered = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            Object value = values.get(parameters[i]);
+            if (value == null && !values.containsKey(parameters[i])) {
+                throw new IllegalArgumentException("Missing template parameter: " + parameters[i]);
+            }
+            ordered[i] = value;
+        }
+        return ordered;
+    }
+    
+    public List<String> getParameters() {
+        return Collections.unmodifiableList(Arrays.asList(parameters));
+    }
+    
+    public String getSource() { return source; }
+}
@@ -0,0 +1,188 @@
+package com.patterns.creational.factory;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Named {@link NotificationTemplate}s, compiled once at startup from
+ * {@code notification.templates.<name>} or later through {@link #register(String, String)}.
+ *
+ * Rendered messages are cached by template and values, so parameter sets that repeat,
+ * such as a status update sent to many users, are rendered once. The cache is bounded per
+ * lock stripe with LRU eviction; {@code notification.template-cache.max-entries=0} turns it off.
+ * Values are assumed to render the same every time, which holds for strings and numbers.
+ */
+@Component
+public class NotificationTemplates {
+    private static final int STRIPES = 16;
+    
+    @Autowired
+    private Environment environment;
+    
+    @Value("${notification.template-cache.max-entries:10000}")
+    private int maxCachedRenders;
+    
+    private final Map<String, NotificationTemplate> templates = new ConcurrentHashMap<>();
+    private final Segment[] segments = new Segment[STRIPES];
+    private final LongAdder renders = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    @PostConstruct
+    void loadTemplates() {
+        if (maxCachedRenders < 0) {
+            throw new IllegalArgumentException("Template cache size cannot be negative: " + maxCachedRenders);
+        }
+        // Rounded up, so a cache smaller than the stripe count is not silently turned off
+        int perStripe = (maxCachedRenders + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            segments[i] = new Segment(perStripe);
+        }
+        Binder.get(environment)
+                .bind("notification.templates", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of())
+                .forEach(this::register);
+    }
+    
+    /**
+     * Compiles and registers a template, replacing any previous one of that name.
+     */
+    public NotificationTemplate register(String name, String source) {
+        NotificationTemplate template = NotificationTemplate.compile(source);
+        templates.put(name, template);
+        return template;
+    }
+    
+    public NotificationTemplate get(String name) {
+        NotificationTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown notification template: " + name);
+        }
+        return template;
+    }
+    
+    /**
+     * Renders the named template, reusing an earlier rendering of the same values.
+     */
+    public String render(String name, Map<String, ?> parameters) {
+        NotificationTemplate template = get(name);
+        return render(template, template.valuesOf(parameters));
+    }
+    
+    private String render(NotificationTemplate template, Object[] values) {
+        renders.increment();
+        RenderKey key = new RenderKey(template, values);
+        Segment segment = segments[(key.hash ^ (key.hash >>> 16)) & (STRIPES - 1)];
+        if (segment.capacity == 0) {
+            return template.render(values);
+        }
+        String cached = segment.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        String rendered = template.render(values);
+        if (segment.put(key, rendered)) {
+            evictions.increment();
+        }
+        return rendered;
+    }
+    
+    public Map<String, Object> getStats() {
+        long total = renders.sum();
+        int cached = 0;
+        for (Segment segment : segments) {
+            cached += segment.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("templates", templates.size());
+        stats.put("renders", total);
+        stats.put("cacheHits", hits.sum());
+        stats.put("cacheHitRate", total == 0 ? 0.0 : (double) hits.sum() / total);
+        stats.put("cachedRenders", cached);
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+    
+    private static class RenderKey {
+        private final NotificationTemplate template;
+        private final Object[] values;
+        private final int hash;
+        
+        RenderKey(NotificationTemplate template, Object[] values) {
+            this.template = template;
+            this.values = values;
+            this.hash = 31 * System.identityHashCode(template) + Arrays.hashCode(values);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RenderKey)) return false;
+            RenderKey other = (RenderKey) o;
+            return hash == other.hash && template == other.template && Arrays.equals(values, other.values);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    // One lock stripe: an access-ordered map whose eldest entry is the LRU victim
+    private static class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<RenderKey, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+        
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        String get(RenderKey key) {
+            lock.lock();
+            try {
+                return entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // Returns whether an entry was evicted to make room
+        boolean put(RenderKey key, String rendered) {
+            lock.lock();
+            try {
+                boolean evicted = false;
+                if (!entries.containsKey(key) && entries.size() >= capacity) {
+                    entries.remove(entries.keySet().iterator().next());
+                    evicted = true;
+                }
+                entries.put(key, rendered);
+                return evicted;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
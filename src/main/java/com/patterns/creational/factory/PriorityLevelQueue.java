@@ -0,0 +1,186 @@
+package com.patterns.creational.factory;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded blocking queue with a FIFO per priority level; level 0 is the most urgent.
+ * Taking is O(levels): the first non-empty level is served oldest first.
+ */
+class PriorityLevelQueue<E> {
+    private final ArrayDeque<E>[] levels;
+    private final ToIntFunction<E> levelOf;
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int count;
+    
+    @SuppressWarnings("unchecked")
+    PriorityLevelQueue(int capacity, int levelCount, ToIntFunction<E> levelOf) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.levelOf = levelOf;
+        this.levels = new ArrayDeque[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            levels[i] = new ArrayDeque<>();
+        }
+    }
+    
+    boolean offer(E element) {
+        lock.lock();
+        try {
+            if (count == capacity) {
+                return false;
+            }
+            insert(element);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == capacity) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            insert(element);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    E poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : take();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return take();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    int drainTo(Collection<? super E> target, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && count > 0) {
+                target.add(take());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Removes the oldest element of the least urgent non-empty level, considering only
+     * levels at or below {@code mostUrgentLevel} in urgency; null if there is none.
+     */
+    E pollLeastUrgent(int mostUrgentLevel) {
+        lock.lock();
+        try {
+            for (int level = levels.length - 1; level >= mostUrgentLevel; level--) {
+                if (!levels[level].isEmpty()) {
+                    count--;
+                    notFull.signal();
+                    return levels[level].pollFirst();
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    boolean remove(E element) {
+        lock.lock();
+        try {
+            if (levels[levelOf.applyAsInt(element)].removeFirstOccurrence(element)) {
+                count--;
+                notFull.signal();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void insert(E element) {
+        levels[levelOf.applyAsInt(element)].addLast(element);
+        count++;
+        notEmpty.signal();
+    }
+    
+    private E take() {
+        for (ArrayDeque<E> level : levels) {
+            if (!level.isEmpty()) {
+                count--;
+                notFull.signal();
+                return level.pollFirst();
+            }
+        }
+        throw new IllegalStateException("Queue count out of sync");
+    }
+    
+    int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    int size(int level) {
+        lock.lock();
+        try {
+            return levels[level].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,147 @@
+package com.patterns.creational.factory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bloom filter that only remembers the last {@code window} of insertions.
+ *
+ * The window is split into time slices, each with its own fixed-size filter. New
+ * entries go into the current slice, lookups consult every slice still inside the
+ * window, and the slot of a slice that has aged out is reused with a fresh filter
+ * by whichever caller first needs it. One slot more than there are slices keeps the
+ * partly elapsed oldest slice alive alongside the current one, so an entry is
+ * forgotten between {@code window} and {@code window + window/slices} after it was
+ * added. Memory is fixed by the expected number of entries per window, however long
+ * the filter runs.
+ *
+ * No locks: bits are set with compare-and-set and slices are swapped atomically.
+ * Like any Bloom filter it may report a false positive, at about the configured
+ * rate, but never a false negative within the window. A lookup matches if any live
+ * slice does, so each slice is sized for an equal share of that rate.
+ */
+public class RotatingBloomFilter {
+    private final long sliceNanos;
+    private final int bitsPerSlice;
+    private final int hashes;
+    private final int sliceCount;
+    // sliceCount + 1 slots; a slice is live while at most sliceCount epochs old
+    private final AtomicReferenceArray<Slice> slices;
+    
+    public RotatingBloomFilter(long window, TimeUnit unit, int sliceCount,
+                               long expectedPerWindow, double falsePositiveRate) {
+        if (window <= 0 || sliceCount < 2 || expectedPerWindow < 1
+                || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid filter settings: window=" + window + " " + unit
+                    + ", slices=" + sliceCount + ", expected=" + expectedPerWindow + ", fpp=" + falsePositiveRate);
+        }
+        this.sliceNanos = Math.max(1, unit.toNanos(window) / sliceCount);
+        // Standard sizing, for the share of the window's entries that land in one slice; the
+        // slices' false positive rates add up, so each gets its share of the configured rate
+        double perSlice = Math.max(1.0, (double) expectedPerWindow / sliceCount);
+        double slicePositiveRate = falsePositiveRate / sliceCount;
+        long bits = (long) Math.ceil(-perSlice * Math.log(slicePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitsPerSlice = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, bits));
+        this.hashes = Math.max(1, (int) Math.round((double) bitsPerSlice / perSlice * Math.log(2)));
+        this.sliceCount = sliceCount;
+        this.slices = new AtomicReferenceArray<>(sliceCount + 1);
+    }
+    
+    /**
+     * Adds the entry and returns true, or returns false if it was already seen within the window.
+     */
+    public boolean add(long hash) {
+        long epoch = System.nanoTime() / sliceNanos;
+        for (int i = 0; i < slices.length(); i++) {
+            Slice slice = slices.get(i);
+            if (slice != null && slice.epoch != epoch && isLive(slice, epoch) && contains(slice, hash)) {
+                return false;
+            }
+        }
+        return setBits(current(epoch), hash);
+    }
+    
+    public boolean mightContain(long hash) {
+        long epoch = System.nanoTime() / sliceNanos;
+        for (int i = 0; i < slices.length(); i++) {
+            Slice slice = slices.get(i);
+            if (slice != null && isLive(slice, epoch) && contains(slice, hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean isLive(Slice slice, long epoch) {
+        return epoch - slice.epoch <= sliceCount;
+    }
+    
+    // The slice for this epoch, replacing the aged-out one that occupied its slot
+    private Slice current(long epoch) {
+        int index = (int) Math.floorMod(epoch, (long) slices.length());
+        while (true) {
+            Slice slice = slices.get(index);
+            if (slice != null && slice.epoch >= epoch) {
+                return slice;
+            }
+            Slice fresh = new Slice(epoch, bitsPerSlice);
+            if (slices.compareAndSet(index, slice, fresh)) {
+                return fresh;
+            }
+        }
+    }
+    
+    private boolean contains(Slice slice, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitsPerSlice);
+            if ((slice.bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Sets the entry's bits; it was new if any of them was still clear
+    private boolean setBits(Slice slice, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitsPerSlice);
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long current;
+            while (((current = slice.bits.get(word)) & mask) == 0) {
+                if (slice.bits.compareAndSet(word, current, current | mask)) {
+                    added = true;
+                    break;
+                }
+            }
+        }
+        return added;
+    }
+    
+    public int getBitsPerSlice() { return bitsPerSlice; }
+    public int getHashes() { return hashes; }
+    public int getSliceCount() { return sliceCount; }
+    
+    /**
+     * Memory held by the filter's bit arrays once every slice is in use.
+     */
+    public long getMemoryBytes() {
+        return (long) slices.length() * ((bitsPerSlice + 63) / 64) * Long.BYTES;
+    }
+    
+    private static class Slice {
+        private final long epoch;
+        private final AtomicLongArray bits;
+        
+        Slice(long epoch, int bits) {
+            this.epoch = epoch;
+            this.bits = new AtomicLongArray((bits + 63) / 64);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.patterns.creational.factory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * Instead of a token count refilled by a timer, the bucket keeps one atomic value:
+ * the time at which its next token frees up (the virtual-scheduling form of a token
+ * bucket). Taking tokens is a single compare-and-set that moves that time forward,
+ * and returns how long the caller must wait for them rather than refusing.
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong nextFree;
+    
+    /**
+     * @param permitsPerSecond sustained rate
+     * @param burst            tokens that can be taken at once after the bucket has been idle
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Invalid rate limit: " + permitsPerSecond + "/s, burst " + burst);
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        // Start full
+        this.nextFree = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+    
+    /**
+     * Takes the tokens and returns the nanoseconds to wait before using them; 0 when they are available now.
+     */
+    public long reserve(int permits) {
+        while (true) {
+            long now = System.nanoTime();
+            long current = nextFree.get();
+            // An idle bucket holds at most burst tokens
+            long from = Math.max(current, now - burstNanos);
+            long next = from + permits * intervalNanos;
+            if (nextFree.compareAndSet(current, next)) {
+                return Math.max(0, next - now);
+            }
+        }
+    }
+    
+    /**
+     * Whether the bucket has refilled completely, i.e. is indistinguishable from a new one.
+     */
+    public boolean isFull() {
+        return nextFree.get() <= System.nanoTime() - burstNanos;
+    }
+}
@@ -0,0 +1,12 @@
+package com.patterns.creational.factory;
+
+/**
+ * A notification that never reached its channel: it was rejected or dropped by a full
+ * queue, or its dispatcher shut down first. Unlike a failed send, it is safe to send again.
+ */
+public class UndeliveredNotificationException extends IllegalStateException {
+    
+    public UndeliveredNotificationException(String message) {
+        super(message);
+    }
+}
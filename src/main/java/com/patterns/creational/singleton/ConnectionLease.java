@@ -0,0 +1,75 @@
+package com.patterns.creational.singleton;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A borrowed connection. Closing the lease hands the connection back to the pool,
+ * so it is meant to be used with try-with-resources. Closing twice is a no-op.
+ * For leak detection a lease remembers when it was acquired and, for a sampled
+ * fraction of leases, the stack that acquired it.
+ */
+public class ConnectionLease implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final PooledConnection connection;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private final long acquiredNanos = System.nanoTime();
+    private final Throwable acquireSite;
+    private final AtomicBoolean leakReported = new AtomicBoolean(false);
+    
+    ConnectionLease(ConnectionPool pool, PooledConnection connection, Throwable acquireSite) {
+        this.pool = pool;
+        this.connection = connection;
+        this.acquireSite = acquireSite;
+    }
+    
+    public PooledConnection getConnection() {
+        if (released.get()) {
+            throw new IllegalStateException("Lease has already been released");
+        }
+        return connection;
+    }
+    
+    /**
+     * Prepares a statement on the leased connection, reusing a cached one for the same SQL.
+     */
+    public PreparedQuery prepare(String sql) {
+        return getConnection().prepare(sql);
+    }
+    
+    public boolean isReleased() {
+        return released.get();
+    }
+    
+    public long getHeldMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acquiredNanos);
+    }
+    
+    /**
+     * Stack of the code that acquired this lease, or null if this lease was not sampled.
+     */
+    public Throwable getAcquireSite() {
+        return acquireSite;
+    }
+    
+    long getAcquiredNanos() {
+        return acquiredNanos;
+    }
+    
+    boolean markLeakReported() {
+        return leakReported.compareAndSet(false, true);
+    }
+    
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(connection);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "ConnectionLease{connection=" + connection.getId() + ", heldMs=" + getHeldMillis()
+                + ", released=" + released.get() + '}';
+    }
+}
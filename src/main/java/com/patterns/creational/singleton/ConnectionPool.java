@@ -0,0 +1,313 @@
+package com.patterns.creational.singleton;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Bounded pool of {@link PooledConnection}s.
+ * Idle connections sit in a lock-free deque and are reused most-recently-returned
+ * first, which keeps a warm working set and lets surplus connections stay idle.
+ * A fair semaphore with one permit per connection bounds the pool and serves
+ * waiting threads in arrival order.
+ * Waiting and signalling use only {@code java.util.concurrent} primitives, never
+ * monitors, so a borrower blocked on a virtual thread unmounts instead of pinning
+ * its carrier thread; keep {@code synchronized} off the borrow and release paths.
+ * Idle connections are validated by {@link #probeIdle()}, which never blocks borrowers,
+ * and leases held too long are surfaced by {@link #findNewLeaks(long)}.
+ */
+public class ConnectionPool {
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    
+    private final int minSize;
+    private final int maxSize;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Predicate<PooledConnection> healthCheck;
+    private final int statementCacheSize;
+    private final double leakStackSampleRate;
+    private volatile boolean closed = false;
+    
+    public ConnectionPool(int minSize, int maxSize) {
+        this(minSize, maxSize, PooledConnection::isOpen);
+    }
+    
+    public ConnectionPool(int minSize, int maxSize, Predicate<PooledConnection> healthCheck) {
+        this(new ConnectionPoolBuilder().minSize(minSize).maxSize(maxSize).healthCheck(healthCheck));
+    }
+    
+    private ConnectionPool(ConnectionPoolBuilder builder) {
+        if (builder.minSize < 0 || builder.maxSize < 1 || builder.minSize > builder.maxSize) {
+            throw new IllegalArgumentException(
+                    "Invalid pool size: min=" + builder.minSize + ", max=" + builder.maxSize);
+        }
+        if (builder.leakStackSampleRate < 0 || builder.leakStackSampleRate > 1) {
+            throw new IllegalArgumentException("Leak stack sample rate must be within [0, 1]: "
+                    + builder.leakStackSampleRate);
+        }
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.healthCheck = builder.healthCheck;
+        this.statementCacheSize = Math.max(builder.statementCacheSize, 0);
+        this.leakStackSampleRate = builder.leakStackSampleRate;
+    }
+    
+    public static class ConnectionPoolBuilder {
+        private int minSize = 0;
+        private int maxSize = 10;
+        private Predicate<PooledConnection> healthCheck = PooledConnection::isOpen;
+        private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+        private double leakStackSampleRate = 0;
+        
+        public ConnectionPoolBuilder minSize(int minSize) {
+            this.minSize = minSize;
+            return this;
+        }
+        
+        public ConnectionPoolBuilder maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+        
+        public ConnectionPoolBuilder healthCheck(Predicate<PooledConnection> healthCheck) {
+            this.healthCheck = healthCheck;
+            return this;
+        }
+        
+        public ConnectionPoolBuilder statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+        
+        /**
+         * Fraction of leases, between 0 and 1, that record the acquiring stack for leak reports.
+         */
+        public ConnectionPoolBuilder leakStackSampleRate(double leakStackSampleRate) {
+            this.leakStackSampleRate = leakStackSampleRate;
+            return this;
+        }
+        
+        public ConnectionPool build() {
+            return new ConnectionPool(this);
+        }
+    }
+    
+    /**
+     * Opens the minimum number of connections up front on the calling thread.
+     */
+    public void open() {
+        open(Runnable::run);
+    }
+    
+    /**
+     * Opens the minimum number of connections up front, one task per connection on
+     * the given executor, and returns once all of them are idle in the pool.
+     */
+    public void open(Executor executor) {
+        int missing = minSize - totalConnections.get();
+        CompletableFuture<?>[] warmups = new CompletableFuture<?>[Math.max(missing, 0)];
+        for (int i = 0; i < warmups.length; i++) {
+            warmups[i] = CompletableFuture.runAsync(() -> idle.offer(createConnection()), executor);
+        }
+        CompletableFuture.allOf(warmups).join();
+    }
+    
+    /**
+     * Borrows a connection, waiting up to the given timeout if the pool is exhausted.
+     */
+    public ConnectionLease borrow(long timeout, TimeUnit unit) {
+        ensureOpen();
+        try {
+            if (!permits.tryAcquire(timeout, unit)) {
+                throw new IllegalStateException("Connection pool exhausted: no connection available within "
+                        + unit.toMillis(timeout) + " ms (max size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a connection", e);
+        }
+        
+        PooledConnection connection = idle.pollFirst();
+        if (connection == null) {
+            // Holding a permit guarantees there is room for one more connection
+            connection = createConnection();
+        }
+        ConnectionLease lease = new ConnectionLease(this, connection, sampleAcquireSite());
+        connection.setLease(lease);
+        return lease;
+    }
+    
+    // Capturing a stack is expensive, so only a sampled fraction of leases pay for it
+    private Throwable sampleAcquireSite() {
+        if (leakStackSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < leakStackSampleRate) {
+            return new Throwable("Connection lease acquired by " + Thread.currentThread().getName());
+        }
+        return null;
+    }
+    
+    /**
+     * Leases held longer than the threshold that have not been reported before.
+     * Outstanding leases are found through the connections themselves, so tracking
+     * adds no bookkeeping to borrow and release. Each leak is reported only once.
+     */
+    public List<ConnectionLease> findNewLeaks(long thresholdMillis) {
+        List<ConnectionLease> leaks = new ArrayList<>();
+        for (ConnectionLease lease : getOutstandingLeases()) {
+            if (!lease.isReleased() && lease.getHeldMillis() >= thresholdMillis && lease.markLeakReported()) {
+                leaks.add(lease);
+            }
+        }
+        return leaks;
+    }
+    
+    public List<ConnectionLease> getOutstandingLeases() {
+        List<ConnectionLease> leases = new ArrayList<>();
+        for (PooledConnection connection : connections) {
+            ConnectionLease lease = connection.getLease();
+            if (lease != null) {
+                leases.add(lease);
+            }
+        }
+        return leases;
+    }
+    
+    void release(PooledConnection connection) {
+        connection.setLease(null);
+        if (closed || !connection.isOpen()) {
+            discard(connection);
+        } else {
+            idle.offerFirst(connection);
+        }
+        permits.release();
+    }
+    
+    /**
+     * Runs the health check against every idle connection, evicting the ones that fail
+     * and topping the pool back up to its minimum size.
+     * A connection is only taken for probing when a permit is free right now, so
+     * borrowers never wait on the prober; leased connections are checked on return.
+     */
+    public ProbeResult probeIdle() {
+        int probed = 0;
+        int evicted = 0;
+        int candidates = idle.size();
+        for (int i = 0; i < candidates && !closed && tryTakePermit(); i++) {
+            try {
+                // Rotate oldest to newest so each idle connection is visited once
+                PooledConnection connection = idle.pollLast();
+                if (connection == null) {
+                    break;
+                }
+                probed++;
+                if (healthCheck.test(connection)) {
+                    idle.offerFirst(connection);
+                } else {
+                    discard(connection);
+                    evicted++;
+                }
+            } finally {
+                permits.release();
+            }
+        }
+        
+        int replaced = 0;
+        while (!closed && totalConnections.get() < minSize && tryTakePermit()) {
+            try {
+                idle.offerFirst(createConnection());
+                replaced++;
+            } finally {
+                permits.release();
+            }
+        }
+        return new ProbeResult(probed, evicted, replaced);
+    }
+    
+    private boolean tryTakePermit() {
+        try {
+            // Timed form with zero wait honours fairness instead of barging ahead of waiters
+            return permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * Closes every idle connection. Leased connections are closed as they come back.
+     */
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) {
+            discard(connection);
+        }
+    }
+    
+    private PooledConnection createConnection() {
+        totalConnections.incrementAndGet();
+        PooledConnection connection = new PooledConnection(nextId.incrementAndGet(), statementCacheSize);
+        connections.add(connection);
+        return connection;
+    }
+    
+    private void discard(PooledConnection connection) {
+        connection.close();
+        connections.remove(connection);
+        totalConnections.decrementAndGet();
+    }
+    
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Connection pool is closed");
+        }
+    }
+    
+    public boolean isClosed() { return closed; }
+    public int getMinSize() { return minSize; }
+    public int getMaxSize() { return maxSize; }
+    public int getTotalConnections() { return totalConnections.get(); }
+    public int getIdleConnections() { return idle.size(); }
+    public int getActiveConnections() { return maxSize - permits.availablePermits(); }
+    public int getWaitingThreads() { return permits.getQueueLength(); }
+    
+    /**
+     * Live view of every open connection, idle or leased.
+     */
+    public Collection<PooledConnection> getConnections() {
+        return Collections.unmodifiableSet(connections);
+    }
+    
+    /**
+     * Outcome of one {@link #probeIdle()} pass.
+     */
+    public static class ProbeResult {
+        private final int probed;
+        private final int evicted;
+        private final int replaced;
+        
+        ProbeResult(int probed, int evicted, int replaced) {
+            this.probed = probed;
+            this.evicted = evicted;
+            this.replaced = replaced;
+        }
+        
+        public int getProbed() { return probed; }
+        public int getEvicted() { return evicted; }
+        public int getReplaced() { return replaced; }
+    }
+}
@@ -0,0 +1,23 @@
+package com.patterns.creational.singleton;
+
+/**
+ * Lifecycle states of the {@link DatabaseConnection}.
+ * Transitions are made with compare-and-set, so concurrent callers never act on a stale check.
+ */
+public enum ConnectionState {
+    DISCONNECTED,
+    CONNECTING,
+    CONNECTED,
+    // Some connections failed their health probe and were replaced
+    DEGRADED,
+    // Every probed connection failed; the pool is being rebuilt in the background
+    RECONNECTING,
+    DISCONNECTING;
+    
+    /**
+     * Whether connections can be borrowed in this state.
+     */
+    public boolean isUsable() {
+        return this == CONNECTED || this == DEGRADED || this == RECONNECTING;
+    }
+}
@@ -0,0 +1,103 @@
+package com.patterns.creational.singleton;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consistent hash ring with virtual nodes.
+ * Each node is placed on the ring at {@code virtualNodes} points and a key belongs to
+ * the first point clockwise from its hash, so adding a node to N existing ones only
+ * moves about 1/(N+1) of the keys. The ring is immutable; adding or removing a node
+ * returns a new ring, which makes lookups lock-free for concurrent readers.
+ */
+public class ConsistentHashRing<T> {
+    private final Map<String, T> nodes;
+    private final int virtualNodes;
+    private final long[] points;
+    private final T[] owners;
+    
+    public ConsistentHashRing(int virtualNodes) {
+        this(new LinkedHashMap<>(), virtualNodes);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Virtual nodes must be positive: " + virtualNodes);
+        }
+        this.nodes = Collections.unmodifiableMap(nodes);
+        this.virtualNodes = virtualNodes;
+        
+        long[][] placed = new long[nodes.size() * virtualNodes][];
+        List<T> values = new ArrayList<>(nodes.values());
+        int i = 0;
+        int nodeIndex = 0;
+        for (String name : nodes.keySet()) {
+            for (int v = 0; v < virtualNodes; v++) {
+                placed[i++] = new long[]{hash(name + "#" + v), nodeIndex};
+            }
+            nodeIndex++;
+        }
+        Arrays.sort(placed, (a, b) -> Long.compare(a[0], b[0]));
+        
+        this.points = new long[placed.length];
+        this.owners = (T[]) new Object[placed.length];
+        for (int p = 0; p < placed.length; p++) {
+            points[p] = placed[p][0];
+            owners[p] = values.get((int) placed[p][1]);
+        }
+    }
+    
+    public ConsistentHashRing<T> withNode(String name, T node) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Node already on the ring: " + name);
+        }
+        Map<String, T> updated = new LinkedHashMap<>(nodes);
+        updated.put(name, node);
+        return new ConsistentHashRing<>(updated, virtualNodes);
+    }
+    
+    public ConsistentHashRing<T> withoutNode(String name) {
+        Map<String, T> updated = new LinkedHashMap<>(nodes);
+        updated.remove(name);
+        return new ConsistentHashRing<>(updated, virtualNodes);
+    }
+    
+    /**
+     * Node owning the key: the first ring point at or after the key's hash, wrapping around.
+     */
+    public T nodeFor(String key) {
+        if (points.length == 0) {
+            throw new IllegalStateException("Hash ring has no nodes");
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+    
+    public Map<String, T> getNodes() { return nodes; }
+    public int getVirtualNodes() { return virtualNodes; }
+    public boolean isEmpty() { return nodes.isEmpty(); }
+    
+    // 64-bit FNV-1a followed by the MurmurHash3 finalizer for a well-spread ring position
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
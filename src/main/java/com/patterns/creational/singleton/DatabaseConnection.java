@@ -1,36 +1,586 @@
 package com.patterns.creational.singleton;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
 /**
  * Singleton Pattern - Ensures only one instance exists
- * Spring manages this as a singleton by default
+ * Spring manages this as a singleton by default.
+ * The single instance fronts a bounded {@link ConnectionPool}; callers borrow
+ * connections with {@link #acquire()} instead of sharing one handle.
+ *
+ * As a {@link SmartLifecycle} bean the pool is opened and warmed while the context
+ * starts, before the embedded web server accepts traffic, so the application only
+ * reports ready once the minimum number of connections is open.
+ *
+ * Connection state is a {@link ConnectionState} machine driven by compare-and-set,
+ * and a scheduled health probe evicts and replaces broken idle connections off the
+ * request path.
  */
 @Component
-public class DatabaseConnection {
+public class DatabaseConnection implements SmartLifecycle {
+    // Start before the web server (and stop after it has drained requests)
+    static final int LIFECYCLE_PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+    private static final int RECENT_LEAKS = 10;
+    
     private static DatabaseConnection instance;
-    private boolean connected = false;
+    
+    @Value("${database.pool.min-size:2}")
+    private int minPoolSize;
+    
+    @Value("${database.pool.max-size:10}")
+    private int maxPoolSize;
+    
+    @Value("${database.pool.acquire-timeout-ms:1000}")
+    private long acquireTimeoutMillis;
+    
+    @Value("${database.pool.warmup-threads:4}")
+    private int warmupThreads;
+    
+    @Value("${database.pool.statement-cache-size:64}")
+    private int statementCacheSize;
+    
+    @Value("${database.pool.leak-threshold-ms:30000}")
+    private long leakThresholdMillis;
+    
+    @Value("${database.pool.leak-stack-sample-rate:0.01}")
+    private double leakStackSampleRate;
+    
+    @Value("${database.write.batch-size:100}")
+    private int writeBatchSize;
+    
+    @Value("${database.write.linger-ms:5}")
+    private long writeLingerMillis;
+    
+    @Value("${database.write.queue-capacity:10000}")
+    private int writeQueueCapacity;
+    
+    @Value("${database.result-cache.max-entries:10000}")
+    private int resultCacheMaxEntries;
+    
+    // Empty keeps the database in memory only
+    @Value("${database.storage.path:}")
+    private String storagePath;
+    
+    @Value("${database.storage.initial-capacity-bytes:1048576}")
+    private int storageInitialCapacity;
+    
+    @Value("${database.storage.sync-on-commit:true}")
+    private boolean syncOnCommit;
+    
+    @Value("${database.storage.compaction-garbage-ratio:0.5}")
+    private double compactionGarbageRatio;
+    
+    private final AtomicReference<ConnectionState> state = new AtomicReference<>(ConnectionState.DISCONNECTED);
+    // Held by connect() while CONNECTING, so disconnect() can wait for it
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+    private volatile ConnectionPool pool;
+    private volatile WriteBatcher writeBatcher;
+    private volatile QueryResultCache resultCache;
+    private volatile LogStructuredStore store;
+    private final LongAdder leaksDetected = new LongAdder();
+    // Latest leak warnings, oldest first, kept for the leak report after the leases are gone
+    private final ConcurrentLinkedDeque<String> recentLeaks = new ConcurrentLinkedDeque<>();
+    private String name = "primary";
     
     public DatabaseConnection() {
         // Spring will create only one instance
         System.out.println("DatabaseConnection instance created");
     }
     
+    /**
+     * Creates an unconnected shard with this instance's pool, batching and cache
+     * settings but its own storage path. The caller owns the shard's lifecycle.
+     */
+    public DatabaseConnection newShard(String shardName, String shardStoragePath) {
+        DatabaseConnection shard = new DatabaseConnection();
+        shard.name = shardName;
+        shard.minPoolSize = minPoolSize;
+        shard.maxPoolSize = maxPoolSize;
+        shard.acquireTimeoutMillis = acquireTimeoutMillis;
+        shard.warmupThreads = warmupThreads;
+        shard.statementCacheSize = statementCacheSize;
+        shard.leakThresholdMillis = leakThresholdMillis;
+        shard.leakStackSampleRate = leakStackSampleRate;
+        shard.writeBatchSize = writeBatchSize;
+        shard.writeLingerMillis = writeLingerMillis;
+        shard.writeQueueCapacity = writeQueueCapacity;
+        shard.resultCacheMaxEntries = resultCacheMaxEntries;
+        shard.storagePath = shardStoragePath;
+        shard.storageInitialCapacity = storageInitialCapacity;
+        shard.syncOnCommit = syncOnCommit;
+        shard.compactionGarbageRatio = compactionGarbageRatio;
+        return shard;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
     public void connect() {
-        if (!connected) {
-            connected = true;
-            System.out.println("Database connected");
+        // Only the caller that wins the CAS opens the pool; concurrent callers return immediately
+        if (!state.compareAndSet(ConnectionState.DISCONNECTED, ConnectionState.CONNECTING)) {
+            return;
+        }
+        LogStructuredStore newStore = null;
+        ConnectionPool newPool = null;
+        lifecycleLock.lock();
+        try {
+            long startTime = System.currentTimeMillis();
+            if (!storagePath.isBlank()) {
+                newStore = LogStructuredStore.open(Path.of(storagePath), storageInitialCapacity);
+            }
+            newPool = new ConnectionPool.ConnectionPoolBuilder()
+                    .minSize(minPoolSize)
+                    .maxSize(maxPoolSize)
+                    .statementCacheSize(statementCacheSize)
+                    .leakStackSampleRate(leakStackSampleRate)
+                    .build();
+            warmUp(newPool);
+            store = newStore;
+            pool = newPool;
+            resultCache = resultCacheMaxEntries > 0 ? new QueryResultCache(resultCacheMaxEntries) : null;
+            writeBatcher = new WriteBatcher(this::commitBatch, writeBatchSize, writeLingerMillis, writeQueueCapacity);
+            state.set(ConnectionState.CONNECTED);
+            System.out.println("Database " + name + " connected (pool min=" + minPoolSize + ", max=" + maxPoolSize
+                    + ", warmed in " + (System.currentTimeMillis() - startTime) + " ms)");
+        } catch (RuntimeException e) {
+            // Nothing half-open survives a failed connect: the pool and its warmed connections go too
+            writeBatcher = null;
+            resultCache = null;
+            pool = null;
+            if (newPool != null) {
+                newPool.close();
+            }
+            store = null;
+            if (newStore != null) {
+                newStore.close();
+            }
+            state.set(ConnectionState.DISCONNECTED);
+            throw e;
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+    
+    private void warmUp(ConnectionPool newPool) {
+        int threads = Math.max(1, Math.min(warmupThreads, minPoolSize));
+        ExecutorService warmers = Executors.newFixedThreadPool(threads);
+        try {
+            newPool.open(warmers);
+        } finally {
+            warmers.shutdown();
         }
     }
     
+    /**
+     * Closes the pool after flushing pending writes. A disconnect that arrives while
+     * {@link #connect()} is still opening the pool waits for it to finish, so shutting down
+     * during startup does not leave the database connected.
+     */
     public void disconnect() {
-        if (connected) {
-            connected = false;
-            System.out.println("Database disconnected");
+        ConnectionState current = state.get();
+        while (current == ConnectionState.CONNECTING) {
+            // connect() holds the lock until it leaves CONNECTING; it may not have taken it yet
+            lifecycleLock.lock();
+            lifecycleLock.unlock();
+            Thread.onSpinWait();
+            current = state.get();
+        }
+        while (current.isUsable()) {
+            if (state.compareAndSet(current, ConnectionState.DISCONNECTING)) {
+                // Flush pending writes while the pool can still serve them
+                writeBatcher.close();
+                writeBatcher = null;
+                resultCache = null;
+                ConnectionPool closing = pool;
+                pool = null;
+                closing.close();
+                LogStructuredStore closingStore = store;
+                store = null;
+                if (closingStore != null) {
+                    closingStore.close();
+                }
+                state.set(ConnectionState.DISCONNECTED);
+                System.out.println("Database " + name + " disconnected");
+                return;
+            }
+            current = state.get();
         }
     }
     
     public boolean isConnected() {
-        return connected;
+        return state.get().isUsable();
+    }
+    
+    public ConnectionState getState() {
+        return state.get();
+    }
+    
+    /**
+     * Health probe, run on the shared scheduler rather than on request threads.
+     * Moves the state to DEGRADED when some idle connections were evicted, to
+     * RECONNECTING when all of them were, and back to CONNECTED after a clean pass.
+     */
+    @Scheduled(fixedDelayString = "${database.health.probe-interval-ms:5000}")
+    public void probeHealth() {
+        ConnectionState observed = state.get();
+        ConnectionPool current = pool;
+        if (!observed.isUsable() || current == null) {
+            return;
+        }
+        
+        ConnectionPool.ProbeResult result = current.probeIdle();
+        ConnectionState next;
+        if (result.getEvicted() == 0) {
+            next = ConnectionState.CONNECTED;
+        } else if (result.getEvicted() == result.getProbed()) {
+            next = ConnectionState.RECONNECTING;
+        } else {
+            next = ConnectionState.DEGRADED;
+        }
+        
+        // A concurrent disconnect wins over the probe outcome
+        if (next != observed && state.compareAndSet(observed, next)) {
+            System.out.println("Database state " + observed + " -> " + next + " (evicted "
+                    + result.getEvicted() + ", replaced " + result.getReplaced() + ")");
+        }
+    }
+    
+    @Override
+    public void start() {
+        connect();
+    }
+    
+    @Override
+    public void stop() {
+        disconnect();
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return isConnected();
+    }
+    
+    @Override
+    public int getPhase() {
+        return LIFECYCLE_PHASE;
+    }
+    
+    /**
+     * Scheduled leak scan: reports each lease held past the threshold once, with the
+     * acquiring stack when that lease was sampled. Warnings go to stderr and the last
+     * few are kept in {@link #getLeakReport()}.
+     */
+    @Scheduled(fixedDelayString = "${database.pool.leak-check-interval-ms:5000}")
+    public void detectLeaks() {
+        ConnectionPool current = pool;
+        if (current == null) {
+            return;
+        }
+        for (ConnectionLease lease : current.findNewLeaks(leakThresholdMillis)) {
+            leaksDetected.increment();
+            String warning = "Possible connection leak: " + lease + (lease.getAcquireSite() == null
+                    ? " (acquire stack not sampled)"
+                    : "\n" + describeAcquireSite(lease));
+            recentLeaks.addLast(warning);
+            while (recentLeaks.size() > RECENT_LEAKS) {
+                recentLeaks.pollFirst();
+            }
+            System.err.println(warning);
+        }
+    }
+    
+    /**
+     * Leak counters plus the ages of the longest-held outstanding leases.
+     */
+    public Map<String, Object> getLeakReport() {
+        ConnectionPool current = pool;
+        List<ConnectionLease> outstanding = current == null ? List.of() : current.getOutstandingLeases();
+        // Oldest first; sort on the fixed acquire time rather than the ever-growing age
+        outstanding.sort(Comparator.comparingLong(ConnectionLease::getAcquiredNanos));
+        
+        List<Long> oldestAges = new ArrayList<>();
+        List<String> sampledStacks = new ArrayList<>();
+        for (ConnectionLease lease : outstanding.subList(0, Math.min(5, outstanding.size()))) {
+            oldestAges.add(lease.getHeldMillis());
+            if (lease.getAcquireSite() != null && lease.getHeldMillis() >= leakThresholdMillis) {
+                sampledStacks.add(describeAcquireSite(lease));
+            }
+        }
+        
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("thresholdMs", leakThresholdMillis);
+        report.put("stackSampleRate", leakStackSampleRate);
+        report.put("leaksDetected", leaksDetected.sum());
+        report.put("outstandingLeases", outstanding.size());
+        report.put("oldestLeaseAgesMs", oldestAges);
+        report.put("sampledLeakStacks", sampledStacks);
+        report.put("recentLeaks", new ArrayList<>(recentLeaks));
+        return report;
+    }
+    
+    private String describeAcquireSite(ConnectionLease lease) {
+        StringBuilder description = new StringBuilder(lease.getAcquireSite().getMessage());
+        StackTraceElement[] frames = lease.getAcquireSite().getStackTrace();
+        for (int i = 0; i < Math.min(10, frames.length); i++) {
+            description.append("\n\tat ").append(frames[i]);
+        }
+        return description.toString();
+    }
+    
+    /**
+     * Borrows a connection using the configured acquire timeout.
+     */
+    public ConnectionLease acquire() {
+        return acquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    public ConnectionLease acquire(long timeout, TimeUnit unit) {
+        ConnectionPool current = pool;
+        if (current == null) {
+            throw new IllegalStateException("Database is not connected");
+        }
+        return current.borrow(timeout, unit);
+    }
+    
+    /**
+     * Read-through query. Results are served from the result cache when present;
+     * otherwise the loader runs on a leased connection and its result is cached,
+     * tagged with the tables the SQL reads so writes to those tables evict it.
+     */
+    public <T> T query(String sql, List<?> parameters, Function<ConnectionLease, T> loader) {
+        QueryResultCache cache = resultCache;
+        if (cache == null) {
+            return load(loader);
+        }
+        return cache.get(sql, parameters, () -> load(loader));
+    }
+    
+    private <T> T load(Function<ConnectionLease, T> loader) {
+        try (ConnectionLease lease = acquire()) {
+            return loader.apply(lease);
+        }
+    }
+    
+    /**
+     * Evicts every cached result that read the given table.
+     */
+    public void invalidateTable(String table) {
+        QueryResultCache cache = resultCache;
+        if (cache != null) {
+            cache.invalidateTable(table);
+        }
+    }
+    
+    /**
+     * Queues a write for group commit. The future completes once the batch
+     * holding this write has been committed on a pooled connection.
+     */
+    public CompletableFuture<Void> writeAsync(String sql, Object... parameters) {
+        return submit(new WriteOperation(sql, parameters));
+    }
+    
+    /**
+     * Queues a key-value write to the embedded store for group commit.
+     */
+    public CompletableFuture<Void> saveAsync(String table, String key, String value) {
+        return submit(WriteOperation.put(table, key, value));
+    }
+    
+    public CompletableFuture<Void> deleteAsync(String table, String key) {
+        return submit(WriteOperation.delete(table, key));
+    }
+    
+    /**
+     * Completes once every write queued before this call has been committed.
+     */
+    CompletableFuture<Void> flushWrites() {
+        return submit(WriteOperation.barrier());
+    }
+    
+    private CompletableFuture<Void> submit(WriteOperation operation) {
+        WriteBatcher batcher = writeBatcher;
+        if (batcher == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database is not connected"));
+        }
+        if (operation.getStoreKey() != null && store == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "Key-value writes need database.storage.path to be configured"));
+        }
+        // Checked here rather than at commit, where one malformed write would fail the whole group
+        int expected = PreparedQuery.parse(operation.getSql()).getParameterCount();
+        if (expected != operation.getParameters().size()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Expected " + expected
+                    + " parameters but got " + operation.getParameters().size() + " for: " + operation.getSql()));
+        }
+        return batcher.submit(operation);
+    }
+    
+    /**
+     * Reads a value from the embedded store through the result cache.
+     */
+    public String find(String table, String key) {
+        LogStructuredStore current = requireStore();
+        return query("SELECT value FROM " + table + " WHERE id = ?", List.of(key),
+                lease -> current.getString(WriteOperation.storeKey(table, key)));
+    }
+    
+    private LogStructuredStore requireStore() {
+        LogStructuredStore current = store;
+        if (current == null) {
+            throw new IllegalStateException(isConnected()
+                    ? "Key-value reads need database.storage.path to be configured"
+                    : "Database is not connected");
+        }
+        return current;
+    }
+    
+    // One lease and one round trip for the whole batch, and at most one disk sync
+    private void commitBatch(List<WriteOperation> batch) {
+        Set<String> writtenTables = new HashSet<>();
+        try (ConnectionLease lease = acquire()) {
+            // Every write was validated when it was submitted
+            for (WriteOperation operation : batch) {
+                writtenTables.addAll(lease.prepare(operation.getSql()).getTables());
+            }
+            applyToStore(batch);
+        }
+        writtenTables.forEach(this::invalidateTable);
+    }
+    
+    private void applyToStore(List<WriteOperation> batch) {
+        LogStructuredStore current = store;
+        if (current == null) {
+            return;
+        }
+        boolean stored = false;
+        for (WriteOperation operation : batch) {
+            if (operation.getStoreKey() == null) {
+                continue;
+            }
+            if (operation.isDelete()) {
+                current.delete(operation.getStoreKey());
+            } else {
+                current.put(operation.getStoreKey(), operation.getValue());
+            }
+            stored = true;
+        }
+        if (stored && syncOnCommit) {
+            current.sync();
+        }
+    }
+    
+    /**
+     * Periodic compaction of the embedded store once garbage passes the configured ratio.
+     */
+    @Scheduled(fixedDelayString = "${database.storage.compaction-interval-ms:60000}")
+    public void compactStorage() {
+        LogStructuredStore current = store;
+        if (current != null) {
+            current.compactIfNeeded(compactionGarbageRatio);
+        }
+    }
+    
+    // Embedded store, or null when storage is disabled or the database is not connected
+    LogStructuredStore getStore() {
+        return store;
+    }
+    
+    public Map<String, Object> getStorageStats() {
+        LogStructuredStore current = store;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", current != null);
+        stats.put("name", name);
+        stats.put("path", storagePath);
+        stats.put("keys", current == null ? 0 : current.size());
+        stats.put("logBytes", current == null ? 0L : current.getLogBytes());
+        stats.put("garbageRatio", current == null ? 0.0 : current.getGarbageRatio());
+        return stats;
+    }
+    
+    public Map<String, Object> getWriteStats() {
+        WriteBatcher batcher = writeBatcher;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batchSize", writeBatchSize);
+        stats.put("lingerMs", writeLingerMillis);
+        stats.put("queued", batcher == null ? 0 : batcher.getQueuedWrites());
+        stats.put("committedBatches", batcher == null ? 0 : batcher.getCommittedBatches());
+        stats.put("committedWrites", batcher == null ? 0 : batcher.getCommittedWrites());
+        stats.put("failedWrites", batcher == null ? 0 : batcher.getFailedWrites());
+        return stats;
+    }
+    
+    public Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        ConnectionPool current = pool;
+        stats.put("state", state.get().name());
+        stats.put("minSize", minPoolSize);
+        stats.put("maxSize", maxPoolSize);
+        stats.put("total", current == null ? 0 : current.getTotalConnections());
+        stats.put("idle", current == null ? 0 : current.getIdleConnections());
+        stats.put("active", current == null ? 0 : current.getActiveConnections());
+        stats.put("waiting", current == null ? 0 : current.getWaitingThreads());
+        return stats;
+    }
+    
+    /**
+     * Statement cache counters summed over every connection in the pool.
+     */
+    public Map<String, Object> getStatementCacheStats() {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        int cached = 0;
+        ConnectionPool current = pool;
+        if (current != null) {
+            for (PooledConnection connection : current.getConnections()) {
+                StatementCache cache = connection.getStatementCache();
+                hits += cache.getHits();
+                misses += cache.getMisses();
+                evictions += cache.getEvictions();
+                cached += cache.size();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("capacityPerConnection", statementCacheSize);
+        stats.put("cached", cached);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+    
+    public Map<String, Object> getResultCacheStats() {
+        QueryResultCache cache = resultCache;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxEntries", resultCacheMaxEntries);
+        stats.put("size", cache == null ? 0 : cache.size());
+        stats.put("hits", cache == null ? 0L : cache.getHits());
+        stats.put("misses", cache == null ? 0L : cache.getMisses());
+        stats.put("evictions", cache == null ? 0L : cache.getEvictions());
+        stats.put("rejections", cache == null ? 0L : cache.getRejections());
+        stats.put("invalidations", cache == null ? 0L : cache.getInvalidations());
+        return stats;
     }
 }
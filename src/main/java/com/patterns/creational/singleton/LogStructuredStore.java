@@ -0,0 +1,399 @@
+package com.patterns.creational.singleton;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded key-value storage engine: an in-memory index over a memory-mapped,
+ * append-only log.
+ *
+ * Every put or delete appends a record to the log and points the index at it, so
+ * writes are a memory copy into the mapping and reads are one index lookup plus a
+ * copy out of the mapping. Records are checksummed and their length is written
+ * last, which lets {@link #open(Path, int)} rebuild the index by replaying the log
+ * and cut off a record torn by a crash. Overwritten and deleted records stay in
+ * the log as garbage until {@link #compact()} rewrites just the live ones.
+ *
+ * Record layout: {@code [int bodyLength][int crc32][byte type][int keyLength][key][int valueLength][value]}.
+ */
+public class LogStructuredStore implements AutoCloseable {
+    private static final String LOG_FILE = "data.log";
+    private static final String COMPACTION_FILE = "data.log.compact";
+    private static final String LOCK_FILE = "LOCK";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_SIZE = 8;
+    
+    private final Path directory;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Buffer and index are swapped together on growth and compaction; readers take one snapshot
+    private volatile Segment segment;
+    private FileChannel channel;
+    private FileChannel lockChannel;
+    private int writePosition;
+    private long liveBytes;
+    private long garbageBytes;
+    
+    private LogStructuredStore(Path directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * Opens the store in the given directory, replaying any existing log to rebuild the index.
+     */
+    public static LogStructuredStore open(Path directory, int initialCapacity) {
+        LogStructuredStore store = new LogStructuredStore(directory);
+        try {
+            Files.createDirectories(directory);
+            // One process per directory: a second writer would corrupt the log
+            store.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (store.lockChannel.tryLock() == null) {
+                throw new IllegalStateException("Store directory is already in use: " + directory);
+            }
+            Path logFile = directory.resolve(LOG_FILE);
+            store.channel = FileChannel.open(logFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long capacity = Math.max(store.channel.size(), Math.max(initialCapacity, 4096));
+            store.segment = new Segment(store.map(store.channel, capacity), new ConcurrentHashMap<>());
+            store.recover();
+        } catch (IOException e) {
+            store.closeQuietly();
+            throw new UncheckedIOException("Could not open store in " + directory, e);
+        } catch (RuntimeException e) {
+            store.closeQuietly();
+            throw e;
+        }
+        return store;
+    }
+    
+    // Replays the log from the start; stops at the end marker or the first torn record
+    private void recover() {
+        MappedByteBuffer buffer = segment.buffer;
+        Map<String, Long> index = segment.index;
+        int position = 0;
+        int replayed = 0;
+        boolean torn = false;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int bodyLength = buffer.getInt(position);
+            if (bodyLength == 0) {
+                break;
+            }
+            if (bodyLength < 0 || position + HEADER_SIZE + bodyLength > buffer.capacity()
+                    || checksum(buffer, position + HEADER_SIZE, bodyLength) != buffer.getInt(position + 4)) {
+                torn = true;
+                break;
+            }
+            
+            int body = position + HEADER_SIZE;
+            byte type = buffer.get(body);
+            int keyLength = buffer.getInt(body + 1);
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(body + 5, keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            int recordSize = HEADER_SIZE + bodyLength;
+            
+            Long previous;
+            if (type == PUT) {
+                int valueLength = buffer.getInt(body + 5 + keyLength);
+                previous = index.put(key, location(body + 9 + keyLength, valueLength));
+                liveBytes += recordSize;
+            } else {
+                previous = index.remove(key);
+                garbageBytes += recordSize;
+            }
+            if (previous != null) {
+                int previousSize = recordSize(keyLength, length(previous));
+                liveBytes -= previousSize;
+                garbageBytes += previousSize;
+            }
+            position += recordSize;
+            replayed++;
+        }
+        writePosition = position;
+        if (torn) {
+            // Zero the torn tail so it can never be mistaken for a record later
+            for (int i = position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            System.out.println("Store recovery discarded a torn record at offset " + position);
+        }
+        System.out.println("Store recovered " + index.size() + " keys from " + replayed + " log records");
+    }
+    
+    public byte[] get(String key) {
+        while (true) {
+            Segment current = segment;
+            Long location = current.index.get(key);
+            if (location == null) {
+                return null;
+            }
+            int offset = offset(location);
+            int length = length(location);
+            // The log may have grown past this mapping; retry against the newer one
+            if (offset + length <= current.buffer.capacity()) {
+                byte[] value = new byte[length];
+                current.buffer.get(offset, value);
+                return value;
+            }
+        }
+    }
+    
+    public String getString(String key) {
+        byte[] value = get(key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+    
+    public void put(String key, byte[] value) {
+        append(PUT, key, value);
+    }
+    
+    public void put(String key, String value) {
+        put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public void delete(String key) {
+        append(DELETE, key, null);
+    }
+    
+    private void append(byte type, String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 4 + keyBytes.length + (type == PUT ? 4 + value.length : 0);
+        writeLock.lock();
+        try {
+            ensureOpen();
+            Segment current = ensureCapacity(HEADER_SIZE + bodyLength);
+            MappedByteBuffer buffer = current.buffer;
+            int position = writePosition;
+            int body = position + HEADER_SIZE;
+            buffer.put(body, type);
+            buffer.putInt(body + 1, keyBytes.length);
+            buffer.put(body + 5, keyBytes);
+            if (type == PUT) {
+                buffer.putInt(body + 5 + keyBytes.length, value.length);
+                buffer.put(body + 9 + keyBytes.length, value);
+            }
+            buffer.putInt(position + 4, checksum(buffer, body, bodyLength));
+            // Length goes in last: recovery treats a record without one as the end of the log
+            buffer.putInt(position, bodyLength);
+            writePosition = position + HEADER_SIZE + bodyLength;
+            
+            Long previous = type == PUT
+                    ? current.index.put(key, location(body + 9 + keyBytes.length, value.length))
+                    : current.index.remove(key);
+            if (type == PUT) {
+                liveBytes += HEADER_SIZE + bodyLength;
+            } else {
+                garbageBytes += HEADER_SIZE + bodyLength;
+            }
+            if (previous != null) {
+                int previousSize = recordSize(keyBytes.length, length(previous));
+                liveBytes -= previousSize;
+                garbageBytes += previousSize;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    private Segment ensureCapacity(int recordSize) {
+        Segment current = segment;
+        if (writePosition + recordSize <= current.buffer.capacity()) {
+            return current;
+        }
+        long newCapacity = Math.max((long) current.buffer.capacity() * 2, (long) writePosition + recordSize);
+        if (newCapacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Store log is full; compact it or shard the data");
+        }
+        try {
+            segment = new Segment(map(channel, newCapacity), current.index);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow store log", e);
+        }
+        return segment;
+    }
+    
+    /**
+     * Flushes the mapped log to disk. Writes are already safe from a process crash
+     * once they are in the mapping; this makes them safe from an OS crash too.
+     */
+    public void sync() {
+        segment.buffer.force();
+    }
+    
+    /**
+     * Rewrites the log with only the live records and swaps it in atomically.
+     * Writers wait for the rewrite; readers keep using the old mapping until the swap.
+     */
+    public void compact() {
+        writeLock.lock();
+        try {
+            ensureOpen();
+            Segment current = segment;
+            Path compactFile = directory.resolve(COMPACTION_FILE);
+            Files.deleteIfExists(compactFile);
+            FileChannel compactChannel = FileChannel.open(compactFile, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer compacted = map(compactChannel, Math.max(liveBytes * 2, 4096));
+            ConcurrentHashMap<String, Long> index = new ConcurrentHashMap<>();
+            
+            int position = 0;
+            for (Map.Entry<String, Long> entry : current.index.entrySet()) {
+                byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                int valueLength = length(entry.getValue());
+                int bodyLength = 9 + keyBytes.length + valueLength;
+                int body = position + HEADER_SIZE;
+                compacted.put(body, PUT);
+                compacted.putInt(body + 1, keyBytes.length);
+                compacted.put(body + 5, keyBytes);
+                compacted.putInt(body + 5 + keyBytes.length, valueLength);
+                compacted.put(body + 9 + keyBytes.length, current.buffer, offset(entry.getValue()), valueLength);
+                compacted.putInt(position + 4, checksum(compacted, body, bodyLength));
+                compacted.putInt(position, bodyLength);
+                index.put(entry.getKey(), location(body + 9 + keyBytes.length, valueLength));
+                position += HEADER_SIZE + bodyLength;
+            }
+            compacted.force();
+            Files.move(compactFile, directory.resolve(LOG_FILE),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            
+            long reclaimed = garbageBytes;
+            channel.close();
+            channel = compactChannel;
+            segment = new Segment(compacted, index);
+            writePosition = position;
+            liveBytes = position;
+            garbageBytes = 0;
+            System.out.println("Store compacted: reclaimed " + reclaimed + " bytes, " + index.size() + " live keys");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Store compaction failed", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Compacts when garbage makes up more than the given fraction of the log.
+     */
+    public boolean compactIfNeeded(double garbageRatio) {
+        if (getGarbageRatio() <= garbageRatio) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+    
+    public double getGarbageRatio() {
+        writeLock.lock();
+        try {
+            long total = liveBytes + garbageBytes;
+            return total == 0 ? 0 : (double) garbageBytes / total;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public int size() { return segment.index.size(); }
+    public boolean containsKey(String key) { return segment.index.containsKey(key); }
+    
+    /**
+     * Live keys; weakly consistent with writes made during iteration.
+     */
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(segment.index.keySet());
+    }
+    
+    public long getLogBytes() {
+        writeLock.lock();
+        try {
+            return writePosition;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            if (channel != null && channel.isOpen()) {
+                segment.buffer.force();
+                channel.close();
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close store", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    private void closeQuietly() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException ignored) {
+            // Already failing to open
+        }
+    }
+    
+    private void ensureOpen() {
+        if (!channel.isOpen()) {
+            throw new IllegalStateException("Store is closed");
+        }
+    }
+    
+    private MappedByteBuffer map(FileChannel fileChannel, long capacity) throws IOException {
+        return fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+    
+    private static int checksum(MappedByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+    
+    private static int recordSize(int keyLength, int valueLength) {
+        return HEADER_SIZE + 9 + keyLength + valueLength;
+    }
+    
+    // Index entries pack the value's offset and length into one long
+    private static long location(int offset, int length) {
+        return ((long) offset << 32) | (length & 0xFFFFFFFFL);
+    }
+    
+    private static int offset(long location) {
+        return (int) (location >>> 32);
+    }
+    
+    private static int length(long location) {
+        return (int) location;
+    }
+    
+    private static class Segment {
+        private final MappedByteBuffer buffer;
+        private final ConcurrentHashMap<String, Long> index;
+        
+        Segment(MappedByteBuffer buffer, ConcurrentHashMap<String, Long> index) {
+            this.buffer = buffer;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.patterns.creational.singleton;
+
+/**
+ * A single physical connection owned by the {@link ConnectionPool}.
+ * Callers never hold one directly - they borrow it through a {@link ConnectionLease}.
+ */
+public class PooledConnection {
+    private final int id;
+    private final long createdAt;
+    private final StatementCache statementCache;
+    private volatile boolean open = true;
+    private volatile ConnectionLease lease;
+    
+    PooledConnection(int id, int statementCacheSize) {
+        this.id = id;
+        this.createdAt = System.currentTimeMillis();
+        this.statementCache = new StatementCache(statementCacheSize);
+    }
+    
+    public int getId() { return id; }
+    public long getCreatedAt() { return createdAt; }
+    public boolean isOpen() { return open; }
+    public StatementCache getStatementCache() { return statementCache; }
+    
+    /**
+     * The lease currently holding this connection, or null while it is idle.
+     */
+    public ConnectionLease getLease() { return lease; }
+    
+    void setLease(ConnectionLease lease) {
+        this.lease = lease;
+    }
+    
+    PreparedQuery prepare(String sql) {
+        return statementCache.prepare(sql);
+    }
+    
+    void close() {
+        open = false;
+    }
+    
+    @Override
+    public String toString() {
+        return "PooledConnection{id=" + id + ", open=" + open + '}';
+    }
+}
@@ -0,0 +1,83 @@
+package com.patterns.creational.singleton;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A parsed and prepared SQL statement.
+ * Parsing happens once per connection and SQL text; afterwards the statement is
+ * served from the connection's {@link StatementCache}.
+ */
+public class PreparedQuery {
+    private final String sql;
+    private final String command;
+    private final int parameterCount;
+    private final Set<String> tables;
+    
+    private PreparedQuery(String sql, String command, int parameterCount, Set<String> tables) {
+        this.sql = sql;
+        this.command = command;
+        this.parameterCount = parameterCount;
+        this.tables = tables;
+    }
+    
+    static PreparedQuery parse(String sql) {
+        if (sql == null || sql.isBlank()) {
+            throw new IllegalArgumentException("SQL must not be empty");
+        }
+        String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        String command = trimmed.substring(0, end).toUpperCase(Locale.ROOT);
+        return new PreparedQuery(sql, command, countParameters(trimmed), findTables(trimmed));
+    }
+    
+    // Table names are the identifiers following FROM, JOIN, INTO and UPDATE
+    private static Set<String> findTables(String sql) {
+        Set<String> tables = new LinkedHashSet<>();
+        String[] tokens = sql.toLowerCase(Locale.ROOT).split("[\\s,;()]+");
+        for (int i = 0; i < tokens.length - 1; i++) {
+            String token = tokens[i];
+            if (token.equals("from") || token.equals("join") || token.equals("into") || token.equals("update")) {
+                String table = tokens[i + 1].replace("`", "").replace("\"", "");
+                if (!table.isEmpty() && !table.equals("select")) {
+                    tables.add(table);
+                }
+            }
+        }
+        return Collections.unmodifiableSet(tables);
+    }
+    
+    // Counts '?' placeholders, ignoring any inside quoted literals
+    private static int countParameters(String sql) {
+        int count = 0;
+        boolean inQuote = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                inQuote = !inQuote;
+            } else if (c == '?' && !inQuote) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public String getSql() { return sql; }
+    public String getCommand() { return command; }
+    public int getParameterCount() { return parameterCount; }
+    public Set<String> getTables() { return tables; }
+    
+    public boolean isQuery() {
+        return "SELECT".equals(command);
+    }
+    
+    @Override
+    public String toString() {
+        return "PreparedQuery{command=" + command + ", parameters=" + parameterCount + ", sql='" + sql + "'}";
+    }
+}
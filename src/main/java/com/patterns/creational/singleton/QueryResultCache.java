@@ -0,0 +1,331 @@
+package com.patterns.creational.singleton;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of query results, keyed by SQL text plus parameters.
+ *
+ * Every entry is tagged with the tables its query reads. Invalidating a table bumps
+ * that tag's version and drops only the entries carrying it; an entry whose tag
+ * versions changed while it was being loaded is never served, so a read racing a
+ * write cannot resurrect stale data.
+ *
+ * Size is bounded per lock stripe with LRU order, and a TinyLFU frequency sketch
+ * decides admission: a new result only displaces the LRU victim if it has been
+ * requested more often, which keeps one-off scans from flushing hot entries.
+ */
+public class QueryResultCache {
+    private static final int STRIPES = 16;
+    
+    private final Segment[] segments = new Segment[STRIPES];
+    private final FrequencySketch sketch;
+    private final Map<String, Set<String>> tablesBySql = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> tagVersions = new ConcurrentHashMap<>();
+    private final Map<String, Set<QueryKey>> keysByTag = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final int maxEntries;
+    
+    public QueryResultCache(int maxEntries) {
+        if (maxEntries < STRIPES) {
+            throw new IllegalArgumentException("Result cache needs at least " + STRIPES + " entries, got " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        for (int i = 0; i < STRIPES; i++) {
+            segments[i] = new Segment(maxEntries / STRIPES);
+        }
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+    
+    /**
+     * Returns the cached result for the query, or runs the loader and caches its result.
+     * Null results are returned but not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String sql, List<?> parameters, Supplier<T> loader) {
+        QueryKey key = new QueryKey(sql, parameters);
+        sketch.increment(key.hashCode());
+        Segment segment = segmentFor(key);
+        
+        CachedResult cached = segment.get(key);
+        if (cached != null && isCurrent(cached)) {
+            hits.increment();
+            return (T) cached.value;
+        }
+        misses.increment();
+        
+        Set<String> tables = tablesBySql.computeIfAbsent(sql, s -> PreparedQuery.parse(s).getTables());
+        long[] versions = snapshotVersions(tables);
+        T value = loader.get();
+        if (value != null) {
+            admit(segment, key, new CachedResult(value, tables, versions));
+        }
+        return value;
+    }
+    
+    /**
+     * Drops every cached result that read the given table.
+     */
+    public void invalidateTable(String table) {
+        String tag = table.toLowerCase(Locale.ROOT);
+        // Bump first so in-flight loads for this table are never served
+        tagVersions.computeIfAbsent(tag, t -> new AtomicLong()).incrementAndGet();
+        Set<QueryKey> keys = keysByTag.get(tag);
+        if (keys == null) {
+            return;
+        }
+        for (Iterator<QueryKey> it = keys.iterator(); it.hasNext(); ) {
+            QueryKey key = it.next();
+            it.remove();
+            if (segmentFor(key).remove(key) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+    
+    public void invalidateAll() {
+        for (String tag : tagVersions.keySet()) {
+            invalidateTable(tag);
+        }
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+    
+    private void admit(Segment segment, QueryKey key, CachedResult result) {
+        segment.lock.lock();
+        try {
+            if (!segment.entries.containsKey(key) && segment.entries.size() >= segment.capacity) {
+                Map.Entry<QueryKey, CachedResult> victim = segment.entries.entrySet().iterator().next();
+                if (sketch.frequency(key.hashCode()) <= sketch.frequency(victim.getKey().hashCode())) {
+                    rejections.increment();
+                    return;
+                }
+                segment.entries.remove(victim.getKey());
+                untag(victim.getKey(), victim.getValue());
+                evictions.increment();
+            }
+            segment.entries.put(key, result);
+        } finally {
+            segment.lock.unlock();
+        }
+        for (String tag : result.tables) {
+            keysByTag.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+    
+    private void untag(QueryKey key, CachedResult result) {
+        for (String tag : result.tables) {
+            Set<QueryKey> keys = keysByTag.get(tag);
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+    }
+    
+    private long[] snapshotVersions(Set<String> tables) {
+        long[] versions = new long[tables.size()];
+        int i = 0;
+        for (String tag : tables) {
+            versions[i++] = tagVersions.computeIfAbsent(tag, t -> new AtomicLong()).get();
+        }
+        return versions;
+    }
+    
+    private boolean isCurrent(CachedResult cached) {
+        int i = 0;
+        for (String tag : cached.tables) {
+            if (tagVersions.get(tag).get() != cached.versions[i++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private Segment segmentFor(QueryKey key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+    
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+    
+    public int getMaxEntries() { return maxEntries; }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getRejections() { return rejections.sum(); }
+    public long getInvalidations() { return invalidations.sum(); }
+    
+    private static class QueryKey {
+        private final String sql;
+        private final List<?> parameters;
+        private final int hash;
+        
+        QueryKey(String sql, List<?> parameters) {
+            this.sql = sql;
+            this.parameters = new ArrayList<>(parameters);
+            this.hash = 31 * sql.hashCode() + this.parameters.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof QueryKey)) return false;
+            QueryKey other = (QueryKey) o;
+            return hash == other.hash && sql.equals(other.sql) && Objects.equals(parameters, other.parameters);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    private static class CachedResult {
+        private final Object value;
+        private final Set<String> tables;
+        private final long[] versions;
+        
+        CachedResult(Object value, Set<String> tables, long[] versions) {
+            this.value = value;
+            this.tables = tables;
+            this.versions = versions;
+        }
+    }
+    
+    // One lock stripe: an access-ordered map whose eldest entry is the LRU victim
+    private static class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<QueryKey, CachedResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+        
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        CachedResult get(QueryKey key) {
+            lock.lock();
+            try {
+                return entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        CachedResult remove(QueryKey key) {
+            lock.lock();
+            try {
+                return entries.remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
+
+/**
+ * Count-min sketch of recent access frequency used for TinyLFU admission.
+ * Four hashed counters per key, each saturating at 15; all counters are halved
+ * once the number of increments reaches ten times the cache size, so the
+ * sketch tracks recent popularity rather than all-time counts.
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+    
+    private final AtomicIntegerArray counters;
+    private final int mask;
+    private final int resetThreshold;
+    private final AtomicInteger additions = new AtomicInteger();
+    
+    FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(expectedEntries, 16) - 1) << 1;
+        this.counters = new AtomicIntegerArray(width * DEPTH);
+        this.mask = width - 1;
+        this.resetThreshold = expectedEntries * 10;
+    }
+    
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            int current;
+            while ((current = counters.get(index)) < MAX_COUNT) {
+                if (counters.compareAndSet(index, current, current + 1)) {
+                    added = true;
+                    break;
+                }
+            }
+        }
+        if (added && additions.incrementAndGet() >= resetThreshold) {
+            reset();
+        }
+    }
+    
+    int frequency(int hash) {
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters.get(indexOf(hash, row)));
+        }
+        return min;
+    }
+    
+    // Ageing: halve every counter. Races with concurrent increments only blur the estimate.
+    private void reset() {
+        additions.set(0);
+        for (int i = 0; i < counters.length(); i++) {
+            int current;
+            do {
+                current = counters.get(i);
+            } while (!counters.compareAndSet(i, current, current >>> 1));
+        }
+    }
+    
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9E3779B1;
+        h ^= h >>> 15;
+        return row * (mask + 1) + (h & mask);
+    }
+}
@@ -0,0 +1,279 @@
+package com.patterns.creational.singleton;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Routes keys such as order or user ids to one of several {@link DatabaseConnection}
+ * shards through a {@link ConsistentHashRing} with virtual nodes.
+ *
+ * Shards are listed in {@code database.shards.names} and inherit the primary
+ * connection's settings; each gets its own embedded store under
+ * {@code database.shards.storage-root}, or stays in memory when that is empty.
+ *
+ * {@link #addShard(String)} moves only the keys the new ring assigns to the new shard.
+ * Writes pause while those keys move; reads keep being served from the old owner
+ * until the copy is complete and the ring is switched, and a read that misses on the
+ * old owner after the switch is retried on the new one.
+ */
+@Component
+public class ShardRouter implements SmartLifecycle {
+    
+    @Autowired
+    private DatabaseConnection databaseConnection;
+    
+    // Comma-separated shard names; empty disables sharding
+    @Value("${database.shards.names:}")
+    private String shardNames;
+    
+    @Value("${database.shards.storage-root:}")
+    private String storageRoot;
+    
+    @Value("${database.shards.virtual-nodes:128}")
+    private int virtualNodes;
+    
+    // Writes hold the read side while submitting; rebalancing holds the write side
+    private final ReentrantReadWriteLock topologyLock = new ReentrantReadWriteLock();
+    private volatile ConsistentHashRing<DatabaseConnection> ring;
+    private volatile boolean running;
+    
+    @Override
+    public void start() {
+        topologyLock.writeLock().lock();
+        try {
+            if (running) {
+                return;
+            }
+            ConsistentHashRing<DatabaseConnection> initial = new ConsistentHashRing<>(virtualNodes);
+            try {
+                for (String name : shardNames.split(",")) {
+                    if (!name.isBlank()) {
+                        initial = initial.withNode(name.trim(), openShard(name.trim()));
+                    }
+                }
+            } catch (RuntimeException e) {
+                initial.getNodes().values().forEach(DatabaseConnection::disconnect);
+                throw e;
+            }
+            ring = initial;
+            running = true;
+            if (!initial.isEmpty()) {
+                System.out.println("Shard router started with " + initial.getNodes().keySet()
+                        + " (" + virtualNodes + " virtual nodes each)");
+            }
+        } finally {
+            topologyLock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void stop() {
+        topologyLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+            ring.getNodes().values().forEach(DatabaseConnection::disconnect);
+            ring = new ConsistentHashRing<>(virtualNodes);
+        } finally {
+            topologyLock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+    
+    @Override
+    public int getPhase() {
+        return DatabaseConnection.LIFECYCLE_PHASE;
+    }
+    
+    private DatabaseConnection openShard(String name) {
+        String path = storageRoot.isBlank() ? "" : Path.of(storageRoot, name).toString();
+        DatabaseConnection shard = databaseConnection.newShard(name, path);
+        shard.connect();
+        return shard;
+    }
+    
+    /**
+     * Shard owning the given key.
+     */
+    public DatabaseConnection shardFor(String key) {
+        return shardFor(ring, key);
+    }
+    
+    private static DatabaseConnection shardFor(ConsistentHashRing<DatabaseConnection> current, String key) {
+        if (current == null || current.isEmpty()) {
+            throw new IllegalStateException("No database shards are configured");
+        }
+        return current.nodeFor(key);
+    }
+    
+    public CompletableFuture<Void> saveAsync(String table, String key, String value) {
+        topologyLock.readLock().lock();
+        try {
+            return shardFor(key).saveAsync(table, key, value);
+        } finally {
+            topologyLock.readLock().unlock();
+        }
+    }
+    
+    public CompletableFuture<Void> deleteAsync(String table, String key) {
+        topologyLock.readLock().lock();
+        try {
+            return shardFor(key).deleteAsync(table, key);
+        } finally {
+            topologyLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Reads without the topology lock, so lookups continue while keys move. The ring is
+     * switched before moved keys are deleted from their old owners, so a miss that raced
+     * with the switch is seen as a changed ring and retried on the new owner.
+     */
+    public String find(String table, String key) {
+        while (true) {
+            ConsistentHashRing<DatabaseConnection> routed = ring;
+            String value = shardFor(routed, key).find(table, key);
+            if (value != null || routed == ring) {
+                return value;
+            }
+        }
+    }
+    
+    /**
+     * Opens a new shard and moves onto it the keys the new ring assigns to it,
+     * about 1/N of them. Returns the number of keys moved. The shard should also
+     * be added to {@code database.shards.names} so it is opened on the next start.
+     */
+    public int addShard(String name) {
+        if (getShardNames().contains(name)) {
+            throw new IllegalStateException("Shard already exists: " + name);
+        }
+        DatabaseConnection shard = openShard(name);
+        topologyLock.writeLock().lock();
+        try {
+            ConsistentHashRing<DatabaseConnection> current = ring;
+            if (!running || current.getNodes().containsKey(name)) {
+                shard.disconnect();
+                throw new IllegalStateException(running
+                        ? "Shard already exists: " + name
+                        : "Shard router is not running");
+            }
+            ConsistentHashRing<DatabaseConnection> next = current.withNode(name, shard);
+            // No new writes can be submitted now; let the queued ones land before copying
+            for (DatabaseConnection owner : current.getNodes().values()) {
+                owner.flushWrites().join();
+            }
+            
+            Map<DatabaseConnection, List<String>> moved = copyMovedKeys(current, next, shard);
+            ring = next;
+            int movedKeys = 0;
+            Set<String> tables = new HashSet<>();
+            for (Map.Entry<DatabaseConnection, List<String>> entry : moved.entrySet()) {
+                LogStructuredStore source = entry.getKey().getStore();
+                for (String storeKey : entry.getValue()) {
+                    source.delete(storeKey);
+                    tables.add(storeKey.substring(0, storeKey.indexOf(':')));
+                }
+                source.sync();
+                movedKeys += entry.getValue().size();
+            }
+            for (DatabaseConnection owner : next.getNodes().values()) {
+                tables.forEach(owner::invalidateTable);
+            }
+            System.out.println("Added shard " + name + ", moved " + movedKeys + " keys");
+            return movedKeys;
+        } finally {
+            topologyLock.writeLock().unlock();
+        }
+    }
+    
+    // Copies every key whose owner changes to the new shard; the sources are only cleaned up after the ring switch
+    private Map<DatabaseConnection, List<String>> copyMovedKeys(ConsistentHashRing<DatabaseConnection> current,
+                                                                ConsistentHashRing<DatabaseConnection> next,
+                                                                DatabaseConnection shard) {
+        Map<DatabaseConnection, List<String>> moved = new LinkedHashMap<>();
+        LogStructuredStore target = shard.getStore();
+        if (target == null) {
+            return moved;
+        }
+        for (DatabaseConnection owner : current.getNodes().values()) {
+            LogStructuredStore source = owner.getStore();
+            if (source == null) {
+                continue;
+            }
+            List<String> keys = new ArrayList<>();
+            for (String storeKey : source.keys()) {
+                // Store keys are table:key and routing uses the key part
+                if (next.nodeFor(storeKey.substring(storeKey.indexOf(':') + 1)) == shard) {
+                    byte[] value = source.get(storeKey);
+                    if (value != null) {
+                        target.put(storeKey, value);
+                        keys.add(storeKey);
+                    }
+                }
+            }
+            moved.put(owner, keys);
+        }
+        target.sync();
+        return moved;
+    }
+    
+    /**
+     * Health probe, leak scan and compaction for the shards, which are not Spring beans
+     * and so are not reached by their own scheduled methods.
+     */
+    @Scheduled(fixedDelayString = "${database.shards.maintenance-interval-ms:5000}")
+    public void maintainShards() {
+        ConsistentHashRing<DatabaseConnection> current = ring;
+        if (current == null) {
+            return;
+        }
+        for (DatabaseConnection shard : current.getNodes().values()) {
+            shard.probeHealth();
+            shard.detectLeaks();
+            shard.compactStorage();
+        }
+    }
+    
+    public List<String> getShardNames() {
+        ConsistentHashRing<DatabaseConnection> current = ring;
+        return current == null ? List.of() : new ArrayList<>(current.getNodes().keySet());
+    }
+    
+    public Map<String, Object> getShardStats() {
+        ConsistentHashRing<DatabaseConnection> current = ring;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("virtualNodes", virtualNodes);
+        Map<String, Object> shards = new LinkedHashMap<>();
+        if (current != null) {
+            for (Map.Entry<String, DatabaseConnection> entry : current.getNodes().entrySet()) {
+                Map<String, Object> shard = new LinkedHashMap<>();
+                LogStructuredStore store = entry.getValue().getStore();
+                shard.put("state", entry.getValue().getState().name());
+                shard.put("keys", store == null ? 0 : store.size());
+                shards.put(entry.getKey(), shard);
+            }
+        }
+        stats.put("shards", shards);
+        return stats;
+    }
+}
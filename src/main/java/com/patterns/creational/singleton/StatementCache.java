@@ -0,0 +1,54 @@
+package com.patterns.creational.singleton;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of {@link PreparedQuery}s keyed by SQL text, one per pooled connection.
+ * A connection is only ever used by the thread holding its lease, so the cache
+ * needs no locking. Counters have that same single writer and are volatile so
+ * stats can be read from other threads.
+ */
+public class StatementCache {
+    private final int capacity;
+    private final LinkedHashMap<String, PreparedQuery> statements;
+    private volatile long hits;
+    private volatile long misses;
+    private volatile long evictions;
+    
+    StatementCache(int capacity) {
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedQuery> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    PreparedQuery prepare(String sql) {
+        if (capacity == 0) {
+            misses++;
+            return PreparedQuery.parse(sql);
+        }
+        PreparedQuery query = statements.get(sql);
+        if (query != null) {
+            hits++;
+            return query;
+        }
+        misses++;
+        query = PreparedQuery.parse(sql);
+        statements.put(sql, query);
+        return query;
+    }
+    
+    public int size() { return statements.size(); }
+    public int getCapacity() { return capacity; }
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getEvictions() { return evictions; }
+}
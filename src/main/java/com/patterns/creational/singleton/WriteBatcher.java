@@ -0,0 +1,175 @@
+package com.patterns.creational.singleton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind batching with group commit.
+ * Writes from any number of threads are queued and a single flusher thread commits
+ * them together, once {@code batchSize} writes are waiting or {@code lingerMillis}
+ * after the first write of a batch arrived, whichever comes first. Every caller's
+ * future completes when the batch containing its write has committed.
+ */
+public class WriteBatcher {
+    
+    /**
+     * Commits one batch as a unit. Throwing fails every write in the batch.
+     */
+    @FunctionalInterface
+    public interface BatchCommitter {
+        void commit(List<WriteOperation> batch);
+    }
+    
+    private static final long LINGER_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    private final BlockingQueue<WriteOperation> queue;
+    private final BatchCommitter committer;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Thread flusher;
+    private final AtomicLong committedBatches = new AtomicLong();
+    private final AtomicLong committedWrites = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private volatile boolean running = true;
+    
+    public WriteBatcher(BatchCommitter committer, int batchSize, long lingerMillis, int queueCapacity) {
+        if (batchSize < 1 || lingerMillis < 0 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid write batching settings: batchSize=" + batchSize
+                    + ", lingerMillis=" + lingerMillis + ", queueCapacity=" + queueCapacity);
+        }
+        this.committer = committer;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.flusher = new Thread(this::flushLoop, "db-write-batcher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+    
+    /**
+     * Queues a write. The returned future fails immediately if the batcher is closed
+     * or the queue is full, rather than blocking the caller.
+     */
+    public CompletableFuture<Void> submit(WriteOperation operation) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Write batcher is closed"));
+        }
+        if (!queue.offer(operation)) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Write queue is full"));
+        }
+        // Closed while we were enqueuing: whoever removes the write is responsible for it
+        if (!running && queue.remove(operation)) {
+            operation.getResult().completeExceptionally(new IllegalStateException("Write batcher is closed"));
+        }
+        return operation.getResult();
+    }
+    
+    private void flushLoop() {
+        List<WriteOperation> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                WriteOperation first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    // Take whatever is already queued without waiting, then linger for stragglers
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    // Closing cuts the linger short, so close() is not left waiting out a long one
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    WriteOperation next = queue.poll(Math.min(remaining, LINGER_SLICE_NANOS), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Only close() interrupts, once it has failed the queue; commit what we have and finish
+                Thread.interrupted();
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+    
+    private void commit(List<WriteOperation> batch) {
+        try {
+            committer.commit(batch);
+            committedBatches.incrementAndGet();
+            committedWrites.addAndGet(batch.size());
+            for (WriteOperation operation : batch) {
+                operation.getResult().complete(null);
+            }
+        } catch (Throwable e) {
+            // Errors too: the flusher must survive, or every write queued after this one would hang
+            failedWrites.addAndGet(batch.size());
+            for (WriteOperation operation : batch) {
+                operation.getResult().completeExceptionally(e);
+            }
+        }
+    }
+    
+    /**
+     * Stops accepting writes, commits everything already queued and waits for the flusher to finish.
+     */
+    public void close() {
+        close(10, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Like {@link #close()}, but once the timeout passes the writes still queued are failed
+     * and a stuck commit is interrupted. Either way the flusher has stopped on return, so
+     * whatever the committer uses can be closed next.
+     */
+    public void close(long timeout, TimeUnit unit) {
+        running = false;
+        boolean interrupted = false;
+        try {
+            flusher.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (flusher.isAlive()) {
+            failQueued();
+            flusher.interrupt();
+            System.err.println("Write batcher did not drain within " + unit.toMillis(timeout)
+                    + " ms; interrupted the running commit");
+            while (flusher.isAlive()) {
+                try {
+                    flusher.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        failQueued();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void failQueued() {
+        WriteOperation leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.getResult().completeExceptionally(new IllegalStateException("Write batcher is closed"));
+        }
+    }
+    
+    public int getQueuedWrites() { return queue.size(); }
+    public long getCommittedBatches() { return committedBatches.get(); }
+    public long getCommittedWrites() { return committedWrites.get(); }
+    public long getFailedWrites() { return failedWrites.get(); }
+}
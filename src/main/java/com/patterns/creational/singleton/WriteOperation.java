@@ -0,0 +1,79 @@
+package com.patterns.creational.singleton;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single write queued for group commit, together with the future its caller waits on.
+ * Writes made with {@link #put} and {@link #delete} also carry the key and value
+ * applied to the embedded {@link LogStructuredStore}.
+ */
+public class WriteOperation {
+    private final String sql;
+    private final List<Object> parameters;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+    private final String table;
+    private final String key;
+    private final byte[] value;
+    
+    public WriteOperation(String sql, Object... parameters) {
+        this(sql, null, null, null, parameters);
+    }
+    
+    private WriteOperation(String sql, String table, String key, byte[] value, Object... parameters) {
+        if (sql == null || sql.isBlank()) {
+            throw new IllegalArgumentException("SQL must not be empty");
+        }
+        this.sql = sql;
+        this.parameters = Arrays.asList(parameters.clone());
+        this.table = table;
+        this.key = key;
+        this.value = value;
+    }
+    
+    public static WriteOperation put(String table, String key, String value) {
+        return new WriteOperation("INSERT INTO " + table + " (id, value) VALUES (?, ?)",
+                table, key, value.getBytes(StandardCharsets.UTF_8), key, value);
+    }
+    
+    public static WriteOperation delete(String table, String key) {
+        return new WriteOperation("DELETE FROM " + table + " WHERE id = ?", table, key, null, key);
+    }
+    
+    /**
+     * A write with no effect. Batches commit in queue order, so its future completes
+     * only after every write queued ahead of it.
+     */
+    static WriteOperation barrier() {
+        return new WriteOperation("COMMIT");
+    }
+    
+    /**
+     * Key of this write in the embedded store, or null for plain SQL writes.
+     */
+    public String getStoreKey() {
+        return table == null ? null : storeKey(table, key);
+    }
+    
+    static String storeKey(String table, String key) {
+        return table + ':' + key;
+    }
+    
+    byte[] getValue() { return value; }
+    
+    boolean isDelete() {
+        return table != null && value == null;
+    }
+    
+    public String getSql() { return sql; }
+    public List<Object> getParameters() { return parameters; }
+    
+    CompletableFuture<Void> getResult() { return result; }
+    
+    @Override
+    public String toString() {
+        return "WriteOperation{sql='" + sql + "', parameters=" + parameters + '}';
+    }
+}
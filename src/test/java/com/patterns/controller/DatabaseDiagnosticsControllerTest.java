@@ -0,0 +1,48 @@
+package com.patterns.controller;
+
+import com.patterns.creational.singleton.ConnectionLease;
+import com.patterns.creational.singleton.DatabaseConnection;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class DatabaseDiagnosticsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DatabaseConnection databaseConnection;
+
+    @Test
+    void testLeakEndpointReportsOutstandingLeases() throws Exception {
+        databaseConnection.connect();
+
+        try (ConnectionLease lease = databaseConnection.acquire()) {
+            mockMvc.perform(get("/api/patterns/singleton/leaks"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.outstandingLeases").value(1))
+                    .andExpect(jsonPath("$.oldestLeaseAgesMs.length()").value(1))
+                    .andExpect(jsonPath("$.leaksDetected").isNumber());
+        }
+    }
+
+    @Test
+    void testStatsEndpoint() throws Exception {
+        databaseConnection.connect();
+
+        mockMvc.perform(get("/api/patterns/singleton/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pool.state").value("CONNECTED"))
+                .andExpect(jsonPath("$.statementCache.hits").isNumber())
+                .andExpect(jsonPath("$.resultCache.maxEntries").isNumber())
+                .andExpect(jsonPath("$.writes.batchSize").isNumber());
+    }
+}
@@ -0,0 +1,33 @@
+package com.patterns.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class NotificationDiagnosticsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testStatsEndpointListsEveryChannel() throws Exception {
+        mockMvc.perform(get("/api/patterns/factory/sms"))
+                .andExpect(jsonPath("$.success").value(true));
+
+        mockMvc.perform(get("/api/patterns/notifications/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.channels.email.policy").value("BLOCK"))
+                .andExpect(jsonPath("$.channels.sms.enqueued").isNumber())
+                .andExpect(jsonPath("$.channels.push.queueDepth").isNumber())
+                .andExpect(jsonPath("$.channels.sms.avgSendMs").isNumber())
+                .andExpect(jsonPath("$.templates.templates").isNumber())
+                .andExpect(jsonPath("$.outbox.enabled").value(false));
+    }
+}
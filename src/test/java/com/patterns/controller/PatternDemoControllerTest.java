@@ -68,6 +68,27 @@ class PatternDemoControllerTest {
                 .andExpect(jsonPath("$.error").exists());
     }
 
+    @Test
+    void testFactoryBroadcastToAllChannels() throws Exception {
+        mockMvc.perform(get("/api/patterns/factory/broadcast").param("message", "Hello everyone"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.channels.email.success").value(true))
+                .andExpect(jsonPath("$.channels.sms.latencyMs").isNumber())
+                .andExpect(jsonPath("$.channels.push.success").value(true))
+                .andExpect(jsonPath("$.elapsedMs").isNumber());
+    }
+
+    @Test
+    void testFactoryBroadcastReportsFailedChannel() throws Exception {
+        mockMvc.perform(get("/api/patterns/factory/broadcast").param("types", "email,invalid"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(false))
+                .andExpect(jsonPath("$.channels.email.success").value(true))
+                .andExpect(jsonPath("$.channels.invalid.success").value(false))
+                .andExpect(jsonPath("$.channels.invalid.error").exists());
+    }
+
     @Test
     void testBuilderEndpoint() throws Exception {
         MvcResult result = mockMvc.perform(get("/api/patterns/builder"))
@@ -0,0 +1,143 @@
+package com.patterns.creational;
+
+import com.patterns.creational.builder.ColumnarUserStore;
+import com.patterns.creational.builder.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarUserStoreTest {
+
+    @Test
+    void testViewsDecodeWhatWasStored() {
+        ColumnarUserStore store = new ColumnarUserStore();
+        User john = new User.UserBuilder()
+                .firstName("John")
+                .lastName("Doe")
+                .email("john.doe@example.com")
+                .phone("+1234567890")
+                .address("123 Main St, City, State")
+                .age(30)
+                .build();
+        User jose = new User.UserBuilder()
+                .firstName("José")
+                .lastName("Doe")
+                .email("josé@exämple.com")
+                .age(41)
+                .build();
+
+        int first = store.add(john);
+        int second = store.add(jose);
+        store.add(new User.UserBuilder().build());
+
+        assertEquals(3, store.size());
+        ColumnarUserStore.UserView view = store.get(second);
+        assertEquals("José", view.getFirstName());
+        assertEquals("josé@exämple.com", view.getEmail());
+        assertNull(view.getPhone());
+        assertNull(view.getAddress());
+        assertEquals(41, view.getAge());
+        assertEquals(john.toString(), store.get(first).toUser().toString());
+        assertEquals(new User.UserBuilder().build().toString(), store.get(2).toUser().toString());
+        assertThrows(IllegalArgumentException.class, () -> store.get(3));
+
+        store.trimToSize();
+        int third = store.add(jose);
+        assertEquals(john.toString(), store.get(first).toUser().toString());
+        assertEquals(jose.toString(), store.get(third).toUser().toString());
+    }
+
+    // Sanity check on the estimates; the heap itself is measured by the opt-in test below
+    @Test
+    void testColumnarStoreUsesAThirdOfTheHeap() {
+        int users = 300_000;
+        ColumnarUserStore store = new ColumnarUserStore();
+        long objectBytes = 0;
+        for (int i = 0; i < users; i++) {
+            User user = user(i);
+            objectBytes += objectBytes(user);
+            store.add(user);
+        }
+        assertEquals(users, store.size());
+
+        double ratio = (double) objectBytes / store.getMemoryBytes();
+        assertTrue(ratio >= 3, "Columnar store should use at most a third of the heap, ratio " + ratio);
+        assertEquals(user(users - 1).toString(), store.get(users - 1).toString());
+        assertEquals(user(12_345).toString(), store.get(12_345).toString());
+    }
+
+    // Heap sampling depends on the collector and the JVM's flags; run with -Dbenchmarks=true.
+    // G1 rounds each large array up to whole regions, a fixed cost that a million users amortize
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void testColumnarStoreUsesAThirdOfTheMeasuredHeap() {
+        int users = 1_000_000;
+        long before = usedHeapAfterGc();
+        List<User> objects = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            objects.add(user(i));
+        }
+        long objectHeap = usedHeapAfterGc() - before;
+        assertEquals(user(users - 1).toString(), objects.get(users - 1).toString());
+        objects = null;
+
+        before = usedHeapAfterGc();
+        ColumnarUserStore store = new ColumnarUserStore();
+        for (int i = 0; i < users; i++) {
+            store.add(user(i));
+        }
+        store.trimToSize();
+        long storeHeap = usedHeapAfterGc() - before;
+        assertEquals(user(users - 1).toString(), store.get(users - 1).toString());
+
+        double ratio = (double) objectHeap / storeHeap;
+        assertTrue(ratio >= 3, "Columnar store should use at most a third of the heap: "
+                + storeHeap + " vs " + objectHeap + " bytes, ratio " + ratio);
+    }
+
+    // Lowest of several collections, since a collector may leave some garbage in place for a
+    // cycle or two rather than compact around it
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int collection = 0; collection < 8; collection++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    // Every email, phone and address is unique, as in real data; only names repeat
+    private static User user(int i) {
+        return new User.UserBuilder()
+                .firstName("First" + (i % 5_000))
+                .lastName("Last" + (i * 7_919L % 20_000))
+                .email("user" + i + "@example.com")
+                .phone("+1555" + (1_000_000 + i))
+                .address((1 + i % 9_000) + " Elm Street, Apt " + (i / 9_000) + ", Springfield")
+                .age(18 + i % 70)
+                .build();
+    }
+
+    // Heap of a User and its own strings on a 64-bit JVM with compressed oops and compact
+    // strings: a 12-byte header, five references and an int, and per String 24 bytes plus
+    // its byte[] (16-byte header and the Latin-1 bytes), each rounded up to 8; plus the list slot
+    private static long objectBytes(User user) {
+        return align(12 + 5 * 4 + 4) + 4
+                + stringBytes(user.getFirstName()) + stringBytes(user.getLastName())
+                + stringBytes(user.getEmail()) + stringBytes(user.getPhone())
+                + stringBytes(user.getAddress());
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 24 + align(16 + value.length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,334 @@
+package com.patterns.creational;
+
+import com.patterns.creational.singleton.ConnectionLease;
+import com.patterns.creational.singleton.ConnectionPool;
+import com.patterns.creational.singleton.PreparedQuery;
+import com.patterns.creational.singleton.StatementCache;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ConnectionPool(2, 4);
+        pool.open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void testOpenCreatesMinimumConnections() {
+        assertEquals(2, pool.getTotalConnections(), "Pool should open min-size connections");
+        assertEquals(2, pool.getIdleConnections());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    void testParallelOpenWarmsMinimumConnections() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ConnectionPool warmPool = new ConnectionPool(8, 10);
+        try {
+            warmPool.open(executor);
+
+            assertEquals(8, warmPool.getTotalConnections(), "All min-size connections should be open");
+            assertEquals(8, warmPool.getIdleConnections());
+        } finally {
+            executor.shutdown();
+            warmPool.close();
+        }
+    }
+
+    @Test
+    void testLeaseReturnsConnectionOnClose() {
+        int connectionId;
+        try (ConnectionLease lease = pool.borrow(100, TimeUnit.MILLISECONDS)) {
+            connectionId = lease.getConnection().getId();
+            assertEquals(1, pool.getActiveConnections());
+        }
+
+        assertEquals(0, pool.getActiveConnections(), "Connection should be back in the pool");
+        try (ConnectionLease lease = pool.borrow(100, TimeUnit.MILLISECONDS)) {
+            assertEquals(connectionId, lease.getConnection().getId(), "Idle connection should be reused");
+        }
+    }
+
+    @Test
+    void testDoubleCloseIsIgnored() {
+        ConnectionLease lease = pool.borrow(100, TimeUnit.MILLISECONDS);
+        lease.close();
+        lease.close();
+
+        assertTrue(lease.isReleased());
+        assertEquals(0, pool.getActiveConnections());
+        assertThrows(IllegalStateException.class, lease::getConnection);
+    }
+
+    @Test
+    void testPoolGrowsUpToMaxSize() {
+        List<ConnectionLease> leases = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            leases.add(pool.borrow(100, TimeUnit.MILLISECONDS));
+        }
+
+        assertEquals(4, pool.getTotalConnections());
+        assertEquals(4, pool.getActiveConnections());
+        leases.forEach(ConnectionLease::close);
+    }
+
+    @Test
+    void testExhaustedPoolTimesOut() {
+        List<ConnectionLease> leases = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            leases.add(pool.borrow(100, TimeUnit.MILLISECONDS));
+        }
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> pool.borrow(50, TimeUnit.MILLISECONDS));
+        assertTrue(exception.getMessage().contains("exhausted"));
+        leases.forEach(ConnectionLease::close);
+    }
+
+    @Test
+    void testConcurrentBorrowNeverExceedsMaxSize() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(200);
+
+        for (int i = 0; i < 200; i++) {
+            executor.submit(() -> {
+                try (ConnectionLease lease = pool.borrow(5, TimeUnit.SECONDS)) {
+                    maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    inUse.decrementAndGet();
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(0, failures.get(), "No borrower should time out");
+        assertTrue(maxInUse.get() <= 4, "Concurrent leases must not exceed max size");
+        assertTrue(pool.getTotalConnections() <= 4);
+    }
+
+    @Test
+    void testTenThousandBorrowersShareSmallPool() throws InterruptedException {
+        assertTenThousandBorrowersServed(Executors.newFixedThreadPool(1_000));
+    }
+
+    @Test
+    void testVirtualThreadBorrowersNeverPinTheirCarrier() throws Exception {
+        ExecutorService executor = newVirtualThreadExecutor();
+        assumeTrue(executor != null, "Virtual threads need Java 21 or later");
+        Path dump = Files.createTempFile("connection-pool-pinning", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withoutThreshold().withStackTrace();
+            recording.start();
+            assertTenThousandBorrowersServed(executor);
+            recording.stop();
+            recording.dump(dump);
+            List<RecordedEvent> pinned = RecordingFile.readAllEvents(dump);
+            assertTrue(pinned.isEmpty(), "Borrowers blocked while pinned to their carrier: "
+                    + (pinned.isEmpty() ? "" : pinned.get(0)));
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    private static void assertTenThousandBorrowersServed(ExecutorService executor) throws InterruptedException {
+        ConnectionPool smallPool = new ConnectionPool(5, 20);
+        smallPool.open();
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(10_000);
+
+        for (int i = 0; i < 10_000; i++) {
+            executor.submit(() -> {
+                try (ConnectionLease lease = smallPool.borrow(30, TimeUnit.SECONDS)) {
+                    maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                    Thread.sleep(1);
+                    inUse.decrementAndGet();
+                } catch (InterruptedException | RuntimeException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(60, TimeUnit.SECONDS), "All borrowers should be served");
+        executor.shutdown();
+        assertEquals(0, failures.get(), "No borrower should time out");
+        assertTrue(maxInUse.get() <= 20, "Concurrent leases must not exceed max size");
+        assertEquals(0, smallPool.getActiveConnections());
+        smallPool.close();
+    }
+
+    // One virtual thread per task, or null on a runtime without them; looked up reflectively
+    // because the build targets Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Test
+    void testProbeEvictsAndReplacesUnhealthyConnections() {
+        Set<Integer> broken = ConcurrentHashMap.newKeySet();
+        ConnectionPool probedPool = new ConnectionPool(3, 5, c -> !broken.contains(c.getId()));
+        probedPool.open();
+        broken.add(1);
+        broken.add(2);
+
+        ConnectionPool.ProbeResult result = probedPool.probeIdle();
+
+        assertEquals(3, result.getProbed());
+        assertEquals(2, result.getEvicted(), "Broken connections should be evicted");
+        assertEquals(2, result.getReplaced(), "Pool should be topped back up to min size");
+        assertEquals(3, probedPool.getTotalConnections());
+        assertEquals(3, probedPool.getIdleConnections());
+        probedPool.close();
+    }
+
+    @Test
+    void testProbeSkipsLeasedConnections() {
+        ConnectionPool probedPool = new ConnectionPool(1, 1, c -> false);
+        probedPool.open();
+
+        try (ConnectionLease lease = probedPool.borrow(100, TimeUnit.MILLISECONDS)) {
+            ConnectionPool.ProbeResult result = probedPool.probeIdle();
+            assertEquals(0, result.getProbed(), "Leased connections must not be probed");
+            assertTrue(lease.getConnection().isOpen());
+        }
+        probedPool.close();
+    }
+
+    @Test
+    void testStatementCacheReusesPreparedQueries() {
+        try (ConnectionLease lease = pool.borrow(100, TimeUnit.MILLISECONDS)) {
+            PreparedQuery first = lease.prepare("SELECT * FROM orders WHERE id = ?");
+            PreparedQuery second = lease.prepare("SELECT * FROM orders WHERE id = ?");
+
+            assertSame(first, second, "Same SQL should be served from the cache");
+            assertEquals("SELECT", first.getCommand());
+            assertEquals(1, first.getParameterCount());
+
+            StatementCache cache = lease.getConnection().getStatementCache();
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        }
+    }
+
+    @Test
+    void testStatementCacheEvictsLeastRecentlyUsed() {
+        ConnectionPool smallCachePool = new ConnectionPool.ConnectionPoolBuilder()
+                .minSize(1)
+                .maxSize(1)
+                .statementCacheSize(2)
+                .build();
+        smallCachePool.open();
+
+        try (ConnectionLease lease = smallCachePool.borrow(100, TimeUnit.MILLISECONDS)) {
+            PreparedQuery orders = lease.prepare("SELECT * FROM orders");
+            lease.prepare("SELECT * FROM users");
+            lease.prepare("SELECT * FROM orders"); // orders is now most recent
+            lease.prepare("UPDATE users SET age = ? WHERE id = ?"); // evicts users
+
+            StatementCache cache = lease.getConnection().getStatementCache();
+            assertEquals(2, cache.size());
+            assertEquals(1, cache.getEvictions());
+            assertSame(orders, lease.prepare("SELECT * FROM orders"), "Recently used entry should survive");
+        }
+        smallCachePool.close();
+    }
+
+    @Test
+    void testPlaceholdersInsideLiteralsAreIgnored() {
+        try (ConnectionLease lease = pool.borrow(100, TimeUnit.MILLISECONDS)) {
+            PreparedQuery query = lease.prepare("select * from users where name = '?' and age > ?");
+
+            assertEquals(1, query.getParameterCount());
+            assertTrue(query.isQuery());
+        }
+    }
+
+    @Test
+    void testLeaseHeldPastThresholdIsReportedOnce() {
+        ConnectionPool sampledPool = new ConnectionPool.ConnectionPoolBuilder()
+                .minSize(1)
+                .maxSize(2)
+                .leakStackSampleRate(1.0)
+                .build();
+        sampledPool.open();
+
+        ConnectionLease leaked = sampledPool.borrow(100, TimeUnit.MILLISECONDS);
+        List<ConnectionLease> leaks = sampledPool.findNewLeaks(0);
+
+        assertEquals(List.of(leaked), leaks);
+        assertNotNull(leaked.getAcquireSite(), "Sampled lease should carry its acquiring stack");
+        assertTrue(sampledPool.findNewLeaks(0).isEmpty(), "A leak should only be reported once");
+
+        leaked.close();
+        assertTrue(sampledPool.getOutstandingLeases().isEmpty());
+        sampledPool.close();
+    }
+
+    @Test
+    void testUnsampledLeasesSkipStackCapture() {
+        try (ConnectionLease lease = pool.borrow(100, TimeUnit.MILLISECONDS)) {
+            assertNull(lease.getAcquireSite(), "Default pool should not capture stacks");
+            assertTrue(pool.findNewLeaks(60_000).isEmpty(), "Fresh lease is not a leak");
+            assertEquals(1, pool.getOutstandingLeases().size());
+        }
+    }
+
+    @Test
+    void testClosedPoolRejectsBorrow() {
+        pool.close();
+
+        assertThrows(IllegalStateException.class, () -> pool.borrow(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, pool.getTotalConnections(), "Idle connections should be closed");
+    }
+
+    @Test
+    void testInvalidSizesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool(5, 2));
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool(0, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ConnectionPool.ConnectionPoolBuilder().leakStackSampleRate(1.5).build());
+    }
+}
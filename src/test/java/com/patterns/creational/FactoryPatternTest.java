@@ -7,6 +7,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -85,13 +90,39 @@ class FactoryPatternTest {
     }
 
     @Test
-    void testMultipleInstancesAreDifferent() {
+    void testSameTypeReturnsSharedInstance() {
         Notification email1 = notificationFactory.createNotification("email");
-        Notification email2 = notificationFactory.createNotification("email");
+        Notification email2 = notificationFactory.createNotification("EMAIL");
         
-        // Factory creates new instances each time (not singleton)
-        assertNotSame(email1, email2, 
-                     "Factory should create different instances each time");
+        // Channels are stateless beans, so the factory hands out one shared flyweight per type
+        assertSame(email1, email2, 
+                  "Factory should return the same registered instance each time");
+    }
+
+    @Test
+    void testChannelBeansPlugIntoRegistry() {
+        Notification fax = notificationFactory.createNotification("Fax");
+        
+        assertEquals("fax", fax.getType(), "Any Notification bean should be resolvable by its type");
+        assertTrue(notificationFactory.getTypes().containsAll(List.of("email", "sms", "push", "fax")));
+    }
+
+    @TestConfiguration
+    static class FaxChannelConfig {
+        @Bean
+        Notification faxNotification() {
+            return new Notification() {
+                @Override
+                public String getType() {
+                    return "fax";
+                }
+
+                @Override
+                public void send(String message) {
+                    System.out.println("Fax sent: " + message);
+                }
+            };
+        }
     }
 
     @Test
@@ -0,0 +1,125 @@
+package com.patterns.creational;
+
+import com.patterns.creational.factory.HashedWheelTimer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedWheelTimerTest {
+
+    private final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 64, "test-wheel");
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    void testTaskRunsAfterItsDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long started = System.nanoTime();
+
+        timer.schedule(fired::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50), "Task must not run early");
+    }
+
+    @Test
+    void testHundredsOfThousandsOfPendingTimeouts() throws InterruptedException {
+        int count = 200_000;
+        CountDownLatch fired = new CountDownLatch(count);
+        AtomicInteger early = new AtomicInteger();
+
+        // Delays span several revolutions of the 64-slot wheel
+        for (int i = 0; i < count; i++) {
+            long delayMillis = ThreadLocalRandom.current().nextLong(500);
+            long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            timer.schedule(() -> {
+                if (System.nanoTime() < due) {
+                    early.incrementAndGet();
+                }
+                fired.countDown();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(fired.await(10, TimeUnit.SECONDS), "Every timeout should fire, " + fired.getCount() + " left");
+        assertEquals(0, early.get(), "No timeout should fire before its deadline");
+        assertEquals(0, timer.getPending());
+    }
+
+    @Test
+    void testCancelledTimeoutNeverRuns() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        Thread.sleep(60);
+
+        assertEquals(0, runs.get());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel(), "A timeout can only be cancelled once");
+    }
+
+    @Test
+    void testStopHandsBackUnfiredTasks() {
+        timer.schedule(() -> { }, 1, TimeUnit.HOURS);
+        timer.schedule(() -> { }, 2, TimeUnit.HOURS);
+
+        List<Runnable> unfired = timer.stop();
+
+        assertEquals(2, unfired.size());
+        assertThrows(IllegalStateException.class, () -> timer.schedule(() -> { }, 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTimeoutScheduledWhileStoppingIsRunOrHandedBack() throws InterruptedException {
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger ran = new AtomicInteger();
+        CountDownLatch scheduling = new CountDownLatch(4);
+        List<Thread> schedulers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread scheduler = new Thread(() -> {
+                scheduling.countDown();
+                try {
+                    while (true) {
+                        timer.schedule(ran::incrementAndGet, ThreadLocalRandom.current().nextLong(3), TimeUnit.MILLISECONDS);
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException stopped) {
+                    // Refused, so not counted
+                }
+            });
+            scheduler.start();
+            schedulers.add(scheduler);
+        }
+        assertTrue(scheduling.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+
+        List<Runnable> unfired = timer.stop();
+        for (Thread scheduler : schedulers) {
+            scheduler.join(5_000);
+        }
+
+        assertEquals(accepted.get(), ran.get() + unfired.size(), "Every accepted timeout should run or be handed back");
+    }
+
+    @Test
+    void testErrorInTaskDoesNotStopTheWheel() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.schedule(() -> {
+            throw new AssertionError("task failed");
+        }, 1, TimeUnit.MILLISECONDS);
+        timer.schedule(fired::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS), "Later timeouts should still fire");
+    }
+}
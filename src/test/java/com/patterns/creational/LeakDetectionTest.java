@@ -0,0 +1,39 @@
+package com.patterns.creational;
+
+import com.patterns.creational.singleton.ConnectionLease;
+import com.patterns.creational.singleton.DatabaseConnection;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "database.pool.leak-threshold-ms=0",
+        "database.pool.leak-stack-sample-rate=1.0",
+        "database.pool.leak-check-interval-ms=3600000"
+})
+class LeakDetectionTest {
+
+    @Autowired
+    private DatabaseConnection databaseConnection;
+
+    @Test
+    void testLeakReportKeepsSampledStackAfterRelease() {
+        databaseConnection.connect();
+
+        try (ConnectionLease lease = databaseConnection.acquire()) {
+            databaseConnection.detectLeaks();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<String> recentLeaks = (List<String>) databaseConnection.getLeakReport().get("recentLeaks");
+        assertEquals(1, recentLeaks.size());
+        String leak = recentLeaks.get(0);
+        assertTrue(leak.startsWith("Possible connection leak"), leak);
+        assertTrue(leak.contains("\n\tat " + LeakDetectionTest.class.getName()),
+                "The leak should carry its acquiring stack: " + leak);
+    }
+}
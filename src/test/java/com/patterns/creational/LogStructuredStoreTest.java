@@ -0,0 +1,120 @@
+package com.patterns.creational;
+
+import com.patterns.creational.singleton.LogStructuredStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStructuredStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPutGetAndDelete() {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, 4096)) {
+            store.put("order:1", "pending");
+            store.put("order:2", "shipped");
+            store.put("order:1", "confirmed");
+            store.delete("order:2");
+
+            assertEquals("confirmed", store.getString("order:1"), "Latest put should win");
+            assertNull(store.getString("order:2"), "Deleted key should be gone");
+            assertNull(store.getString("order:3"));
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void testReopenReplaysLog() {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, 4096)) {
+            store.put("user:1", "John");
+            store.put("user:2", "Jane");
+            store.delete("user:1");
+        }
+
+        try (LogStructuredStore reopened = LogStructuredStore.open(directory, 4096)) {
+            assertNull(reopened.getString("user:1"));
+            assertEquals("Jane", reopened.getString("user:2"));
+            assertEquals(1, reopened.size());
+        }
+    }
+
+    @Test
+    void testTornRecordIsDiscardedOnRecovery() throws Exception {
+        long end;
+        try (LogStructuredStore store = LogStructuredStore.open(directory, 4096)) {
+            store.put("order:1", "pending");
+            end = store.getLogBytes();
+        }
+
+        // Simulate a crash halfway through an append: a length with a body that does not match its checksum
+        try (RandomAccessFile log = new RandomAccessFile(directory.resolve("data.log").toFile(), "rw")) {
+            log.seek(end);
+            log.writeInt(20);
+            log.writeInt(12345);
+            log.write(new byte[]{1, 0, 0});
+        }
+
+        try (LogStructuredStore recovered = LogStructuredStore.open(directory, 4096)) {
+            assertEquals("pending", recovered.getString("order:1"), "Records before the tear should survive");
+            assertEquals(end, recovered.getLogBytes(), "Log should be cut at the torn record");
+
+            recovered.put("order:2", "shipped");
+        }
+        try (LogStructuredStore reopened = LogStructuredStore.open(directory, 4096)) {
+            assertEquals("shipped", reopened.getString("order:2"), "Appends after recovery should replay");
+        }
+    }
+
+    @Test
+    void testLogGrowsBeyondInitialCapacity() {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, 4096)) {
+            for (int i = 0; i < 2000; i++) {
+                store.put("key:" + i, "value-" + i);
+            }
+
+            assertTrue(store.getLogBytes() > 4096);
+            assertEquals("value-0", store.getString("key:0"));
+            assertEquals("value-1999", store.getString("key:1999"));
+        }
+    }
+
+    @Test
+    void testCompactionKeepsLiveDataAndShrinksLog() {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, 4096)) {
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 100; i++) {
+                    store.put("key:" + i, "round-" + round);
+                }
+            }
+            store.delete("key:0");
+            long before = store.getLogBytes();
+            assertTrue(store.getGarbageRatio() > 0.5);
+
+            assertTrue(store.compactIfNeeded(0.5));
+
+            assertTrue(store.getLogBytes() < before / 5, "Compaction should drop overwritten records");
+            assertEquals(0.0, store.getGarbageRatio());
+            assertEquals("round-9", store.getString("key:50"));
+            assertNull(store.getString("key:0"));
+            store.put("key:100", "after");
+        }
+
+        try (LogStructuredStore reopened = LogStructuredStore.open(directory, 4096)) {
+            assertEquals(100, reopened.size(), "Compacted log should replay to the same contents");
+            assertEquals("after", reopened.getString("key:100"));
+        }
+    }
+
+    @Test
+    void testDirectoryCanOnlyBeOpenedOnce() {
+        try (LogStructuredStore store = LogStructuredStore.open(directory, 4096)) {
+            assertThrows(IllegalStateException.class, () -> LogStructuredStore.open(directory, 4096));
+        }
+    }
+}
@@ -0,0 +1,752 @@
+package com.patterns.creational;
+
+import com.patterns.creational.factory.BackpressurePolicy;
+import com.patterns.creational.factory.ChannelDispatcher;
+import com.patterns.creational.factory.HashedWheelTimer;
+import com.patterns.creational.factory.Notification;
+import com.patterns.creational.factory.NotificationDispatcher;
+import com.patterns.creational.factory.NotificationPriority;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class NotificationDispatcherTest {
+
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
+    @Test
+    void testDispatchDeliversOnChannelWorker() throws Exception {
+        notificationDispatcher.dispatch("EMAIL", "Async hello").get(5, TimeUnit.SECONDS);
+
+        Map<?, ?> email = (Map<?, ?>) notificationDispatcher.getStats().get("email");
+        assertTrue((Long) email.get("delivered") >= 1, "Email worker should have sent the message");
+    }
+
+    @Test
+    void testUnknownTypeFailsImmediately() {
+        assertThrows(IllegalArgumentException.class, () -> notificationDispatcher.dispatch("fax", "Hello"));
+    }
+
+    @Test
+    void testDuplicateRecipientMessagesAreSuppressed() throws Exception {
+        long before = (Long) notificationDispatcher.getDedupStats().get("suppressed");
+
+        notificationDispatcher.dispatch("email", "alice@example.com", "Order ORD-7 shipped").get(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> retry = notificationDispatcher.dispatch("EMAIL", "alice@example.com", "Order ORD-7 shipped");
+        notificationDispatcher.dispatch("sms", "alice@example.com", "Order ORD-7 shipped").get(5, TimeUnit.SECONDS);
+
+        assertTrue(retry.isDone() && !retry.isCompletedExceptionally(), "Duplicate should be dropped as already sent");
+        assertEquals(before + 1, notificationDispatcher.getDedupStats().get("suppressed"),
+                "Only the same channel, recipient and message counts as a duplicate");
+    }
+
+    @Test
+    void testRetryAfterFailedSendIsNotSuppressed() throws Exception {
+        long before = (Long) notificationDispatcher.getDedupStats().get("suppressed");
+
+        // Already past its deadline, so the worker expires it instead of sending it
+        CompletableFuture<Void> expired = notificationDispatcher.dispatch("email", "bob@example.com",
+                "Order ORD-8 shipped", NotificationPriority.HIGH, Instant.now().minusSeconds(1));
+        assertThrows(ExecutionException.class, () -> expired.get(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> retry = notificationDispatcher.dispatch("email", "bob@example.com", "Order ORD-8 shipped");
+        retry.get(5, TimeUnit.SECONDS);
+
+        assertEquals(before, notificationDispatcher.getDedupStats().get("suppressed"),
+                "A message that was never sent must not suppress its retry");
+        assertTrue(notificationDispatcher.dispatch("email", "bob@example.com", "Order ORD-8 shipped").isDone(),
+                "Once sent, the next retry is a duplicate");
+    }
+
+    @Test
+    void testSlowChannelDoesNotBlockCaller() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 10, 1, BackpressurePolicy.BLOCK, 1000);
+
+        long started = System.nanoTime();
+        CompletableFuture<Void> delivery = dispatcher.dispatch("slow");
+        assertTrue(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(100), "Dispatch should only enqueue");
+        assertFalse(delivery.isDone());
+
+        channel.open.countDown();
+        delivery.get(5, TimeUnit.SECONDS);
+        assertEquals(1, dispatcher.getDelivered());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testRejectPolicyFailsWhenQueueIsFull() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 2, 1, BackpressurePolicy.REJECT, 0);
+        fillWorkerAndQueue(dispatcher, channel, 2);
+
+        CompletableFuture<Void> overflow = dispatcher.dispatch("overflow");
+
+        assertTrue(overflow.isCompletedExceptionally(), "A full queue should reject straight away");
+        assertEquals(1, dispatcher.getRejected());
+        channel.open.countDown();
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+        assertEquals(3, dispatcher.getDelivered(), "Queued messages should still be sent on shutdown");
+    }
+
+    @Test
+    void testDropOldestPolicyEvictsOldestQueuedMessage() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 2, 1, BackpressurePolicy.DROP_OLDEST, 0);
+        CompletableFuture<?>[] queued = fillWorkerAndQueue(dispatcher, channel, 2);
+
+        CompletableFuture<Void> newest = dispatcher.dispatch("newest");
+
+        ExecutionException dropped = assertThrows(ExecutionException.class, () -> queued[1].get(1, TimeUnit.SECONDS));
+        assertTrue(dropped.getCause().getMessage().contains("Dropped"));
+        assertEquals(1, dispatcher.getDropped());
+        channel.open.countDown();
+        newest.get(5, TimeUnit.SECONDS);
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testBlockPolicyTimesOutWhenQueueStaysFull() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 1, 1, BackpressurePolicy.BLOCK, 50);
+        fillWorkerAndQueue(dispatcher, channel, 1);
+
+        long started = System.nanoTime();
+        CompletableFuture<Void> blocked = dispatcher.dispatch("blocked");
+
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50), "Caller should wait for room");
+        assertTrue(blocked.isCompletedExceptionally());
+        assertEquals(1, dispatcher.getRejected());
+        channel.open.countDown();
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testDeferredMessagesDoNotQueueBehindEachOtherForSpace() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .queueCapacity(4)
+                .backpressure(BackpressurePolicy.BLOCK, 500)
+                .recipientRateLimit(1, 1)
+                .build();
+        dispatcher.dispatch("in flight");
+        assertTrue(channel.sending.await(5, TimeUnit.SECONDS), "Worker should pick up the first message");
+        // Each recipient's first message spends its token and fills the queue
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch("user" + i, "first");
+        }
+
+        long started = System.nanoTime();
+        List<CompletableFuture<Void>> deferred = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            deferred.add(dispatcher.dispatch("user" + i, "second"));
+        }
+        for (CompletableFuture<Void> delivery : deferred) {
+            assertThrows(ExecutionException.class, () -> delivery.get(5, TimeUnit.SECONDS));
+        }
+
+        // Due after about a second; one at a time on a blocked delay thread they would take two more
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        assertTrue(elapsedMillis < 2_500, "Deferred messages should wait for room together, took " + elapsedMillis + " ms");
+        assertEquals(4, dispatcher.getRejected());
+        channel.open.countDown();
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testStatsReportDepthAndLatency() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 5, 1, BackpressurePolicy.BLOCK, 0);
+        CompletableFuture<?>[] queued = fillWorkerAndQueue(dispatcher, channel, 3);
+
+        assertEquals(3, dispatcher.getStats().get("queueDepth"));
+        Thread.sleep(20);
+        channel.open.countDown();
+        CompletableFuture.allOf(queued).get(5, TimeUnit.SECONDS);
+
+        Map<String, Object> stats = dispatcher.getStats();
+        assertEquals(0, stats.get("queueDepth"));
+        assertEquals(4L, stats.get("delivered"));
+        assertTrue((Double) stats.get("maxLatencyMs") >= 20, "Latency should include time spent queued");
+        assertTrue((Double) stats.get("avgQueueWaitMs") > 0);
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testWorkersHandChannelFullBatches() throws Exception {
+        RecordingChannel channel = new RecordingChannel(false);
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 100, 1, BackpressurePolicy.BLOCK, 0, 10, 200);
+        CompletableFuture<?>[] deliveries = new CompletableFuture<?>[25];
+        for (int i = 0; i < deliveries.length; i++) {
+            deliveries[i] = dispatcher.dispatch("campaign " + i);
+        }
+
+        CompletableFuture.allOf(deliveries).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(10, 10, 5), channel.batchSizes, "Messages should reach the channel in full batches");
+        assertEquals(3, dispatcher.getSendCalls());
+        assertEquals(25, dispatcher.getDelivered());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testFailedBatchFailsEveryMessageInIt() throws Exception {
+        RecordingChannel channel = new RecordingChannel(true);
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 100, 1, BackpressurePolicy.BLOCK, 0, 5, 200);
+        CompletableFuture<?>[] deliveries = new CompletableFuture<?>[5];
+        for (int i = 0; i < deliveries.length; i++) {
+            deliveries[i] = dispatcher.dispatch("doomed " + i);
+        }
+
+        for (CompletableFuture<?> delivery : deliveries) {
+            assertThrows(ExecutionException.class, () -> delivery.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(5, dispatcher.getFailed());
+        assertEquals(1, dispatcher.getSendCalls());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testDispatchAllSendsCampaignInBatches() throws Exception {
+        List<String> campaign = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            campaign.add("Sale starts now " + i);
+        }
+        long callsBefore = notificationDispatcher.dispatcherFor("sms").getSendCalls();
+
+        notificationDispatcher.dispatchAll("sms", campaign).get(5, TimeUnit.SECONDS);
+
+        long calls = notificationDispatcher.dispatcherFor("sms").getSendCalls() - callsBefore;
+        assertTrue(calls < 200, "Campaign should take fewer provider calls than messages, took " + calls);
+    }
+
+    @Test
+    void testFailedSendIsRetriedWithBackoff() throws Exception {
+        FlakyChannel channel = new FlakyChannel(2);
+        HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 64, "test-retry");
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .retry(timer, 4, 10, 100)
+                .build();
+
+        long started = System.nanoTime();
+        dispatcher.dispatch("eventually").get(5, TimeUnit.SECONDS);
+
+        // Backoff of 10 then 20 ms, each at least half of that with jitter
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(15), "Retries should back off");
+        assertEquals(3, channel.calls.get());
+        assertEquals(2, dispatcher.getRetried());
+        assertEquals(0, dispatcher.getFailed());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+        timer.stop();
+    }
+
+    @Test
+    void testFutureFailsOnceAttemptsRunOut() throws Exception {
+        FlakyChannel channel = new FlakyChannel(Integer.MAX_VALUE);
+        HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 64, "test-retry");
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .retry(timer, 3, 5, 20)
+                .build();
+
+        CompletableFuture<Void> delivery = dispatcher.dispatch("never");
+
+        assertThrows(ExecutionException.class, () -> delivery.get(5, TimeUnit.SECONDS));
+        assertEquals(3, channel.calls.get(), "Every allowed attempt should be made");
+        assertEquals(2, dispatcher.getRetried());
+        assertEquals(1, dispatcher.getFailed(), "The message fails once, after its last attempt");
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+        timer.stop();
+    }
+
+    @Test
+    void testErrorFromChannelFailsBatchWithoutStoppingWorker() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Notification channel = new Notification() {
+            @Override
+            public String getType() {
+                return "erroring";
+            }
+
+            @Override
+            public void send(String message) {
+                if (calls.incrementAndGet() == 1) {
+                    throw new AssertionError("Provider SDK is broken");
+                }
+            }
+        };
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 10, 1, BackpressurePolicy.BLOCK, 1000);
+
+        CompletableFuture<Void> broken = dispatcher.dispatch("first");
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> broken.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AssertionError.class, failure.getCause());
+
+        dispatcher.dispatch("second").get(5, TimeUnit.SECONDS);
+        assertEquals(1, dispatcher.getFailed());
+        assertEquals(1, dispatcher.getDelivered());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testUrgentMessagesJumpAheadOfBulkSends() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 10, 1, BackpressurePolicy.BLOCK, 0);
+        CompletableFuture<?>[] deliveries = new CompletableFuture<?>[5];
+        deliveries[0] = dispatcher.dispatch("in flight");
+        assertTrue(channel.sending.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 3; i++) {
+            deliveries[i] = dispatcher.dispatch(null, "campaign " + i, NotificationPriority.LOW, null);
+        }
+        deliveries[4] = dispatcher.dispatch("+15550100", "otp", NotificationPriority.CRITICAL, null);
+
+        channel.open.countDown();
+        CompletableFuture.allOf(deliveries).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("in flight", "otp", "campaign 1", "campaign 2", "campaign 3"), channel.sent);
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> priorities =
+                (Map<String, Map<String, Object>>) dispatcher.getStats().get("priorities");
+        assertEquals(1L, priorities.get("CRITICAL").get("dequeued"));
+        assertEquals(3L, priorities.get("LOW").get("dequeued"));
+        assertTrue((Double) priorities.get("LOW").get("maxQueueWaitMs")
+                >= (Double) priorities.get("CRITICAL").get("maxQueueWaitMs"), "Bulk sends wait longest");
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testMessagePastItsDeadlineIsNeverSent() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 10, 1, BackpressurePolicy.BLOCK, 0);
+        fillWorkerAndQueue(dispatcher, channel, 0);
+
+        CompletableFuture<Void> late = dispatcher.dispatch("+15550100", "code 1234", NotificationPriority.CRITICAL,
+                Instant.now().plusMillis(20));
+        CompletableFuture<Void> onTime = dispatcher.dispatch("+15550100", "code 5678", NotificationPriority.CRITICAL,
+                Instant.now().plusSeconds(60));
+        Thread.sleep(50);
+        channel.open.countDown();
+
+        ExecutionException expired = assertThrows(ExecutionException.class, () -> late.get(5, TimeUnit.SECONDS));
+        assertTrue(expired.getCause().getMessage().contains("Deadline"));
+        onTime.get(5, TimeUnit.SECONDS);
+        assertFalse(channel.sent.contains("code 1234"));
+        assertEquals(1, dispatcher.getExpired());
+        assertEquals(0, dispatcher.getFailed());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testDropOldestShedsLeastUrgentMessagesFirst() throws Exception {
+        GatedChannel channel = new GatedChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher(channel, 2, 1, BackpressurePolicy.DROP_OLDEST, 0);
+        fillWorkerAndQueue(dispatcher, channel, 0);
+        CompletableFuture<Void> normal = dispatcher.dispatch(null, "normal", NotificationPriority.NORMAL, null);
+        CompletableFuture<Void> bulk = dispatcher.dispatch(null, "bulk", NotificationPriority.LOW, null);
+
+        CompletableFuture<Void> urgent = dispatcher.dispatch(null, "urgent", NotificationPriority.HIGH, null);
+        CompletableFuture<Void> lateBulk = dispatcher.dispatch(null, "late bulk", NotificationPriority.LOW, null);
+
+        assertTrue(bulk.isCompletedExceptionally(), "The low priority message makes room for the urgent one");
+        assertTrue(lateBulk.isCompletedExceptionally(), "A full queue of more urgent messages is never displaced");
+        assertEquals(2, dispatcher.getDropped());
+        channel.open.countDown();
+        CompletableFuture.allOf(normal, urgent).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("in flight", "urgent", "normal"), channel.sent);
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testChannelsCarryDefaultPriorities() {
+        assertEquals(NotificationPriority.HIGH, notificationDispatcher.dispatcherFor("push").getDefaultPriority());
+        assertEquals(NotificationPriority.NORMAL, notificationDispatcher.dispatcherFor("email").getDefaultPriority());
+        assertEquals(NotificationPriority.LOW, NotificationPriority.parse(" low "));
+        assertThrows(IllegalArgumentException.class, () -> NotificationPriority.parse("urgent"));
+    }
+
+    @Test
+    void testRecipientAffinityKeepsEachRecipientInOrderOnOneWorker() throws Exception {
+        SendLogChannel channel = new SendLogChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .workers(4)
+                .recipientAffinity(true)
+                .build();
+
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            for (int r = 0; r < 20; r++) {
+                deliveries.add(dispatcher.dispatch("user" + r, "user" + r + ":" + i));
+            }
+        }
+        CompletableFuture.allOf(deliveries.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        Map<String, List<Integer>> sequences = new HashMap<>();
+        Map<String, Set<String>> workers = new HashMap<>();
+        for (String[] send : channel.sends) {
+            String[] parts = send[1].split(":");
+            sequences.computeIfAbsent(parts[0], k -> new ArrayList<>()).add(Integer.parseInt(parts[1]));
+            workers.computeIfAbsent(parts[0], k -> new HashSet<>()).add(send[0]);
+        }
+        assertEquals(20, sequences.size());
+        for (Map.Entry<String, List<Integer>> entry : sequences.entrySet()) {
+            List<Integer> sorted = new ArrayList<>(entry.getValue());
+            Collections.sort(sorted);
+            assertEquals(sorted, entry.getValue(), entry.getKey() + " should be sent in order");
+            assertEquals(1, workers.get(entry.getKey()).size(), entry.getKey() + " should stay on one worker");
+        }
+        assertTrue(workers.values().stream().flatMap(Set::stream).distinct().count() > 1,
+                "Recipients should be spread over the workers");
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testAffinityWorkerHoldsLimitedRecipientWithoutBlockingOthers() throws Exception {
+        SendLogChannel channel = new SendLogChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .workers(1)
+                .recipientAffinity(true)
+                .recipientRateLimit(5, 1)
+                .build();
+
+        long started = System.nanoTime();
+        List<CompletableFuture<Void>> alice = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            alice.add(dispatcher.dispatch("alice", "alice:" + i));
+        }
+        dispatcher.dispatch("bob", "bob:1").get(5, TimeUnit.SECONDS);
+        long bobMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        CompletableFuture.allOf(alice.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        long aliceMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertTrue(bobMillis < 150, "Bob should not wait behind Alice's limit, took " + bobMillis + " ms");
+        assertTrue(aliceMillis >= 350, "Alice's third message should wait for two tokens, took " + aliceMillis + " ms");
+        List<String> aliceSends = new ArrayList<>();
+        channel.sends.forEach(send -> {
+            if (send[1].startsWith("alice")) {
+                aliceSends.add(send[1]);
+            }
+        });
+        assertEquals(List.of("alice:1", "alice:2", "alice:3"), aliceSends);
+        assertEquals(2, dispatcher.getDelayedByRecipient());
+        assertEquals(2, dispatcher.getStats().get("trackedRecipients"));
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testDigestMergesRecipientMessagesAtThreshold() throws Exception {
+        SendLogChannel channel = new SendLogChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .workers(2)
+                .recipientAffinity(true)
+                .digest(60_000, 5, messages -> messages.size() + " orders updated")
+                .build();
+
+        List<CompletableFuture<Void>> digested = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            digested.add(dispatcher.dispatch("alice", "order " + i + " shipped"));
+        }
+        CompletableFuture.allOf(digested.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        // Urgent and time-bound messages are never held back for a digest
+        dispatcher.dispatch("alice", "password changed", NotificationPriority.HIGH, null).get(5, TimeUnit.SECONDS);
+        dispatcher.dispatch("alice", "sale ends soon", NotificationPriority.NORMAL, Instant.now().plusSeconds(60))
+                .get(5, TimeUnit.SECONDS);
+
+        List<String> sent = new ArrayList<>();
+        channel.sends.forEach(send -> sent.add(send[1]));
+        assertEquals(List.of("5 orders updated", "password changed", "sale ends soon"), sent);
+        assertEquals(1, dispatcher.getDigestsSent());
+        assertEquals(5, dispatcher.getDigestedMessages());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testDigestFlushesWhenWindowExpires() throws Exception {
+        SendLogChannel channel = new SendLogChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .workers(1)
+                .digest(200, 50, messages -> String.join(" + ", messages))
+                .build();
+
+        long started = System.nanoTime();
+        CompletableFuture<Void> first = dispatcher.dispatch("bob", "a");
+        CompletableFuture<Void> second = dispatcher.dispatch("bob", "b");
+        CompletableFuture<Void> other = dispatcher.dispatch("carol", "c");
+        CompletableFuture.allOf(first, second, other).get(5, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertTrue(elapsedMillis >= 150, "Digest should wait for its window, took " + elapsedMillis + " ms");
+        List<String> sent = new ArrayList<>();
+        channel.sends.forEach(send -> sent.add(send[1]));
+        // A lone message goes out unchanged
+        assertEquals(Set.of("a + b", "c"), new HashSet<>(sent));
+        assertThrows(IllegalArgumentException.class, () -> new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .workers(2)
+                .digest(200, 50, messages -> String.join(" + ", messages))
+                .build());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testShutdownFailsHeldAndDigestedMessagesOfAStuckWorker() throws Exception {
+        StallingChannel channel = new StallingChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .workers(1)
+                .recipientAffinity(true)
+                .recipientRateLimit(0.01, 1)
+                .digest(60_000, 50, messages -> String.join(" + ", messages))
+                .build();
+
+        CompletableFuture<Void> digested = dispatcher.dispatch("bob", "order shipped");
+        awaitEmptyQueue(dispatcher);
+        dispatcher.dispatch("carol", "code 1", NotificationPriority.HIGH, null).get(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> held = dispatcher.dispatch("carol", "code 2", NotificationPriority.HIGH, null);
+        dispatcher.dispatch("dave", "stall", NotificationPriority.HIGH, null);
+        assertTrue(channel.stalled.await(5, TimeUnit.SECONDS), "Worker should be stuck sending");
+        awaitEmptyQueue(dispatcher);
+
+        dispatcher.shutdown(100, TimeUnit.MILLISECONDS);
+        for (CompletableFuture<Void> parked : List.of(digested, held)) {
+            // Already failed by shutdown, not left waiting on a worker that may never return
+            ExecutionException failed = assertThrows(ExecutionException.class, () -> parked.get(100, TimeUnit.MILLISECONDS));
+            assertTrue(failed.getCause().getMessage().contains("shut down"));
+        }
+        channel.open.countDown();
+    }
+
+    private static void awaitEmptyQueue(ChannelDispatcher dispatcher) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dispatcher.getQueueDepth() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    void testBroadcastWaitsForSlowestChannelNotTheSum() {
+        long started = System.nanoTime();
+        Map<String, Map<String, Object>> reports = notificationDispatcher.broadcast(
+                List.of("slow-voice", "slow-webhook", "email"), "Broadcast message", 2000);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertEquals(List.of("slow-voice", "slow-webhook", "email"), new ArrayList<>(reports.keySet()));
+        reports.values().forEach(report -> assertEquals(true, report.get("success"), report.toString()));
+        assertTrue((Double) reports.get("slow-voice").get("latencyMs") >= SLOW_SEND_MILLIS);
+        assertTrue(elapsedMillis < 2 * SLOW_SEND_MILLIS - 100,
+                "Channels should be sent concurrently, took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void testBroadcastReportsTimeoutsAndUnknownChannels() {
+        Map<String, Map<String, Object>> reports = notificationDispatcher.broadcast(
+                List.of("slow-voice", "pager", "push"), "Broadcast message", 50);
+
+        assertEquals(false, reports.get("slow-voice").get("success"));
+        assertTrue(((String) reports.get("slow-voice").get("error")).contains("Timed out"));
+        assertTrue((Double) reports.get("slow-voice").get("latencyMs") < SLOW_SEND_MILLIS);
+        assertEquals(false, reports.get("pager").get("success"));
+        assertTrue(((String) reports.get("pager").get("error")).contains("Unknown notification type"));
+        assertEquals(true, reports.get("push").get("success"));
+    }
+
+    @Test
+    void testBackpressurePolicyParsesPropertyValues() {
+        assertEquals(BackpressurePolicy.DROP_OLDEST, BackpressurePolicy.parse("drop-oldest"));
+        assertEquals(BackpressurePolicy.REJECT, BackpressurePolicy.parse(" Reject "));
+        assertThrows(IllegalArgumentException.class, () -> BackpressurePolicy.parse("spill"));
+    }
+
+    private static final long SLOW_SEND_MILLIS = 400;
+
+    // Channels with a slow provider, for the broadcast tests
+    @TestConfiguration
+    static class SlowChannelConfig {
+        @Bean
+        Notification slowVoiceNotification() {
+            return new SlowChannel("slow-voice");
+        }
+
+        @Bean
+        Notification slowWebhookNotification() {
+            return new SlowChannel("slow-webhook");
+        }
+    }
+
+    private static class SlowChannel implements Notification {
+        private final String type;
+
+        SlowChannel(String type) {
+            this.type = type;
+        }
+
+        @Override
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public void send(String message) {
+            try {
+                Thread.sleep(SLOW_SEND_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Occupies the single worker with one message, then queues the given number behind it
+    private static CompletableFuture<?>[] fillWorkerAndQueue(ChannelDispatcher dispatcher, GatedChannel channel,
+                                                           int queued) throws InterruptedException {
+        CompletableFuture<?>[] deliveries = new CompletableFuture<?>[queued + 1];
+        deliveries[0] = dispatcher.dispatch("in flight");
+        assertTrue(channel.sending.await(5, TimeUnit.SECONDS), "Worker should pick up the first message");
+        for (int i = 1; i <= queued; i++) {
+            deliveries[i] = dispatcher.dispatch("queued " + i);
+        }
+        return deliveries;
+    }
+
+    // Channel that logs the worker thread and message of every send
+    private static class SendLogChannel implements Notification {
+        private final List<String[]> sends = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String getType() {
+            return "send-log";
+        }
+
+        @Override
+        public void send(String message) {
+            sends.add(new String[]{Thread.currentThread().getName(), message});
+            // Uneven send times, so workers interleave
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(50_000));
+        }
+    }
+
+    // Channel that fails a fixed number of times before it starts sending
+    private static class FlakyChannel implements Notification {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final int failures;
+
+        FlakyChannel(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public String getType() {
+            return "flaky";
+        }
+
+        @Override
+        public void send(String message) {
+            if (calls.incrementAndGet() <= failures) {
+                throw new IllegalStateException("Provider throttled the request");
+            }
+        }
+    }
+
+    // Channel that records the size of every provider call
+    private static class RecordingChannel implements Notification {
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final boolean failing;
+
+        RecordingChannel(boolean failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public String getType() {
+            return "recording";
+        }
+
+        @Override
+        public void send(String message) {
+            sendAll(List.of(message));
+        }
+
+        @Override
+        public void sendAll(Collection<String> messages) {
+            batchSizes.add(messages.size());
+            if (failing) {
+                throw new IllegalStateException("Provider unavailable");
+            }
+        }
+    }
+
+    // Channel whose sends wait until the test opens the gate, like a stalled gateway
+    private static class GatedChannel implements Notification {
+        private final CountDownLatch open = new CountDownLatch(1);
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String getType() {
+            return "gated";
+        }
+
+        @Override
+        public void send(String message) {
+            sent.add(message);
+            sending.countDown();
+            try {
+                open.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Sends straight away except "stall", which waits until the test opens the gate
+    private static class StallingChannel implements Notification {
+        private final CountDownLatch open = new CountDownLatch(1);
+        private final CountDownLatch stalled = new CountDownLatch(1);
+
+        @Override
+        public String getType() {
+            return "stalling";
+        }
+
+        @Override
+        public void send(String message) {
+            if (!message.equals("stall")) {
+                return;
+            }
+            stalled.countDown();
+            try {
+                open.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.patterns.creational;
+
+import com.patterns.creational.factory.NotificationOutbox;
+import com.patterns.creational.factory.NotificationPriority;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testUnacknowledgedEntriesAreReplayedAfterRestart() {
+        Instant deadline = Instant.ofEpochMilli(1_900_000_000_000L);
+        try (NotificationOutbox outbox = NotificationOutbox.open(directory, 4096)) {
+            long first = outbox.append("email", "ana@example.com", "Order confirmed", null, null);
+            outbox.append("sms", "+15550100", "Code 1234", NotificationPriority.CRITICAL, deadline);
+            outbox.append("push", null, "Flash sale", NotificationPriority.LOW, null);
+            outbox.acknowledge(first);
+        }
+
+        try (NotificationOutbox reopened = NotificationOutbox.open(directory, 4096)) {
+            List<NotificationOutbox.Entry> recovered = reopened.recoveredEntries();
+
+            assertEquals(2, recovered.size());
+            NotificationOutbox.Entry otp = recovered.get(0);
+            assertEquals(2, otp.getSequence());
+            assertEquals("sms", otp.getType());
+            assertEquals("+15550100", otp.getRecipient());
+            assertEquals("Code 1234", otp.getMessage());
+            assertEquals(NotificationPriority.CRITICAL, otp.getPriority());
+            assertEquals(deadline, otp.getDeadline());
+            NotificationOutbox.Entry sale = recovered.get(1);
+            assertNull(sale.getRecipient());
+            assertNull(sale.getDeadline());
+            assertEquals(1, reopened.getCheckpoint());
+            assertEquals(4, reopened.append("email", null, "After restart", null, null),
+                    "Sequences continue after the replayed entries");
+        }
+    }
+
+    @Test
+    void testCheckpointWaitsForOutOfOrderAcknowledgements() {
+        try (NotificationOutbox outbox = NotificationOutbox.open(directory, 4096)) {
+            for (int i = 0; i < 3; i++) {
+                outbox.append("email", null, "message " + i, null, null);
+            }
+
+            outbox.acknowledge(2);
+            outbox.acknowledge(3);
+            assertEquals(0, outbox.getCheckpoint(), "Entry 1 is still outstanding");
+            assertEquals(3, outbox.getPending());
+
+            outbox.acknowledge(1);
+            assertEquals(3, outbox.getCheckpoint());
+            assertEquals(0, outbox.getPending());
+        }
+
+        try (NotificationOutbox reopened = NotificationOutbox.open(directory, 4096)) {
+            assertTrue(reopened.recoveredEntries().isEmpty());
+        }
+    }
+
+    @Test
+    void testStuckEntryIsAbandonedOnceTooManyLaterEntriesWait() {
+        try (NotificationOutbox outbox = NotificationOutbox.open(directory, 4096, 3)) {
+            for (int i = 0; i < 6; i++) {
+                outbox.append("email", null, "message " + i, null, null);
+            }
+
+            // Entry 1 never completes
+            for (long sequence = 2; sequence <= 4; sequence++) {
+                outbox.acknowledge(sequence);
+            }
+            assertEquals(0, outbox.getCheckpoint(), "Up to three later entries may wait on entry 1");
+
+            outbox.acknowledge(6);
+            assertEquals(4, outbox.getCheckpoint(), "Entry 1 should be given up and the run after it checkpointed");
+            assertEquals(1, outbox.getAbandoned());
+            assertEquals(1, outbox.getAcknowledgedAhead());
+
+            outbox.acknowledge(1);
+            outbox.acknowledge(5);
+            assertEquals(6, outbox.getCheckpoint());
+        }
+    }
+
+    @Test
+    void testAcknowledgedSegmentsAreDeleted() throws Exception {
+        try (NotificationOutbox outbox = NotificationOutbox.open(directory, 4096)) {
+            for (int i = 1; i <= 200; i++) {
+                outbox.append("email", "user" + i + "@example.com", "Your order #" + i + " has shipped", null, null);
+            }
+            assertTrue(outbox.getSegmentCount() > 1, "200 entries should not fit in one 4 KB segment");
+
+            for (long sequence = 1; sequence <= 200; sequence++) {
+                outbox.acknowledge(sequence);
+            }
+            outbox.sync();
+
+            assertEquals(1, outbox.getSegmentCount(), "Only the active segment should remain");
+            assertEquals(1, segmentFiles());
+        }
+    }
+
+    @Test
+    void testTornRecordIsDiscardedOnRecovery() throws Exception {
+        try (NotificationOutbox outbox = NotificationOutbox.open(directory, 4096)) {
+            outbox.append("email", null, "kept", null, null);
+            outbox.append("email", null, "torn", null, null);
+        }
+
+        // Corrupt the second record's checksum, as if the crash hit halfway through writing it
+        int firstRecord = 8 + 8 + 8 + 1 + (4 + "email".length()) + 4 + (4 + "kept".length());
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(firstRecord + 4);
+            file.writeInt(12345);
+        }
+
+        try (NotificationOutbox reopened = NotificationOutbox.open(directory, 4096)) {
+            assertEquals(1, reopened.recoveredEntries().size());
+            assertEquals("kept", reopened.recoveredEntries().get(0).getMessage());
+            assertEquals(2, reopened.append("email", null, "replacement", null, null));
+        }
+    }
+
+    @Test
+    void testSecondOpenOfSameDirectoryIsRefused() {
+        try (NotificationOutbox outbox = NotificationOutbox.open(directory, 4096)) {
+            assertThrows(IllegalStateException.class, () -> NotificationOutbox.open(directory, 4096));
+        }
+    }
+
+    private long segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".seg")).count();
+        }
+    }
+}
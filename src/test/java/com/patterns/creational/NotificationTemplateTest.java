@@ -0,0 +1,100 @@
+package com.patterns.creational;
+
+import com.patterns.creational.factory.NotificationDispatcher;
+import com.patterns.creational.factory.NotificationTemplate;
+import com.patterns.creational.factory.NotificationTemplates;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class NotificationTemplateTest {
+
+    @Autowired
+    private NotificationTemplates notificationTemplates;
+
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
+    @Test
+    void testRendersPlaceholdersInOrder() {
+        NotificationTemplate template = NotificationTemplate.compile("Hi {name}, order {orderId} ships {when}. Thanks, {name}!");
+
+        assertEquals(List.of("name", "orderId", "when"), template.getParameters());
+        assertEquals("Hi Ana, order 42 ships today. Thanks, Ana!", template.render("Ana", 42, "today"));
+        assertEquals("Hi Bo, order 7 ships soon. Thanks, Bo!",
+                template.render(Map.of("name", "Bo", "orderId", 7L, "when", "soon")));
+    }
+
+    @Test
+    void testDoubledBracesAreLiteral() {
+        NotificationTemplate template = NotificationTemplate.compile("{{literal}} and { value }}}");
+
+        assertEquals(List.of("value"), template.getParameters());
+        assertEquals("{literal} and 1.5}", template.render(1.5));
+    }
+
+    @Test
+    void testMalformedTemplatesAreRejectedAtCompileTime() {
+        assertThrows(IllegalArgumentException.class, () -> NotificationTemplate.compile("Hi {name"));
+        assertThrows(IllegalArgumentException.class, () -> NotificationTemplate.compile("Hi {}"));
+        assertThrows(IllegalArgumentException.class, () -> NotificationTemplate.compile("Hi name}"));
+    }
+
+    @Test
+    void testMissingValuesAreRejected() {
+        NotificationTemplate template = NotificationTemplate.compile("{a} and {b}");
+
+        assertThrows(IllegalArgumentException.class, () -> template.render(Map.of("a", 1)));
+        assertThrows(IllegalArgumentException.class, () -> template.render("only one"));
+    }
+
+    @Test
+    void testRepeatedParameterSetsAreServedFromCache() {
+        notificationTemplates.register("shipping-delay", "Your order from {store} is delayed by {days} days.");
+        Map<String, Object> parameters = Map.of("store", "Acme", "days", 2);
+        long hitsBefore = (Long) notificationTemplates.getStats().get("cacheHits");
+
+        String first = notificationTemplates.render("shipping-delay", parameters);
+        String second = notificationTemplates.render("shipping-delay", Map.of("store", "Acme", "days", 2));
+
+        assertEquals("Your order from Acme is delayed by 2 days.", first);
+        assertSame(first, second, "The second render should reuse the cached string");
+        assertEquals(hitsBefore + 1, notificationTemplates.getStats().get("cacheHits"));
+        assertThrows(IllegalArgumentException.class, () -> notificationTemplates.render("no-such-template", parameters));
+    }
+
+    @Test
+    void testCacheSmallerThanItsStripesStillCaches() {
+        NotificationTemplates small = new NotificationTemplates();
+        ReflectionTestUtils.setField(small, "environment", new StandardEnvironment());
+        ReflectionTestUtils.setField(small, "maxCachedRenders", 5);
+        ReflectionTestUtils.invokeMethod(small, "loadTemplates");
+        small.register("greeting", "Hello {name}");
+
+        small.render("greeting", Map.of("name", "Ana"));
+        small.render("greeting", Map.of("name", "Ana"));
+
+        assertEquals(1L, small.getStats().get("cacheHits"));
+        ReflectionTestUtils.setField(small, "maxCachedRenders", -1);
+        assertThrows(IllegalArgumentException.class, () -> ReflectionTestUtils.invokeMethod(small, "loadTemplates"));
+    }
+
+    @Test
+    void testConfiguredTemplateIsDispatched() throws Exception {
+        notificationDispatcher.dispatchTemplate("email", "ana@example.com", "order-confirmation",
+                Map.of("firstName", "Ana", "orderId", "A-1001", "total", "19.99")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("Hi Ana, your order A-1001 totalling 19.99 is confirmed.",
+                notificationTemplates.render("order-confirmation",
+                        Map.of("firstName", "Ana", "orderId", "A-1001", "total", "19.99")));
+    }
+}
@@ -0,0 +1,106 @@
+package com.patterns.creational;
+
+import com.patterns.creational.singleton.QueryResultCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryResultCacheTest {
+
+    private static final String ORDER_BY_ID = "SELECT * FROM orders WHERE id = ?";
+    private static final String USER_BY_ID = "SELECT * FROM users WHERE id = ?";
+
+    private final QueryResultCache cache = new QueryResultCache(64);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+
+    @Test
+    void testRepeatedQueryIsServedFromCache() {
+        assertEquals("order-1", cache.get(ORDER_BY_ID, List.of(1), () -> load("order-1")));
+        assertEquals("order-1", cache.get(ORDER_BY_ID, List.of(1), () -> load("order-1")));
+
+        assertEquals(1, loads.get(), "Second read should not hit the loader");
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testParametersArePartOfTheKey() {
+        cache.get(ORDER_BY_ID, List.of(1), () -> load("order-1"));
+        assertEquals("order-2", cache.get(ORDER_BY_ID, List.of(2), () -> load("order-2")));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testInvalidationOnlyEvictsTaggedEntries() {
+        cache.get(ORDER_BY_ID, List.of(1), () -> load("order-1"));
+        cache.get(USER_BY_ID, List.of(1), () -> load("user-1"));
+
+        cache.invalidateTable("orders");
+
+        assertEquals(1, cache.size(), "Only the orders entry should be evicted");
+        cache.get(USER_BY_ID, List.of(1), () -> load("user-1"));
+        assertEquals(2, loads.get(), "Users entry should still be cached");
+        cache.get(ORDER_BY_ID, List.of(1), () -> load("order-1"));
+        assertEquals(3, loads.get(), "Orders entry should be reloaded");
+    }
+
+    @Test
+    void testJoinQueryIsTaggedWithEveryTable() {
+        String join = "SELECT o.id FROM orders o JOIN users u ON o.user_id = u.id WHERE u.id = ?";
+        cache.get(join, List.of(7), () -> load("joined"));
+
+        cache.invalidateTable("USERS");
+
+        assertEquals(0, cache.size(), "Write to either table should evict the join result");
+    }
+
+    @Test
+    void testLoadRacingInvalidationIsNotServed() {
+        // The loader reads old data, then a write invalidates the table before the result is cached
+        cache.get(ORDER_BY_ID, List.of(1), () -> {
+            cache.invalidateTable("orders");
+            return load("stale");
+        });
+
+        assertEquals("fresh", cache.get(ORDER_BY_ID, List.of(1), () -> load("fresh")));
+    }
+
+    @Test
+    void testAdmissionProtectsFrequentlyUsedEntries() {
+        QueryResultCache small = new QueryResultCache(16); // one entry per stripe
+        for (int i = 0; i < 5; i++) {
+            small.get(ORDER_BY_ID, List.of(1), () -> "hot");
+        }
+
+        // A stream of one-off queries should not displace an entry that keeps being read
+        for (int i = 2; i < 500; i++) {
+            small.get(ORDER_BY_ID, List.of(i), () -> "cold");
+            if (i % 10 == 0) {
+                small.get(ORDER_BY_ID, List.of(1), () -> load("reloaded"));
+            }
+        }
+
+        assertEquals("hot", small.get(ORDER_BY_ID, List.of(1), () -> load("reloaded")));
+        assertEquals(0, loads.get(), "Hot entry should survive the scan");
+        assertTrue(small.getRejections() > 0, "Cold candidates should be rejected by admission");
+        assertTrue(small.size() <= 16);
+    }
+
+    @Test
+    void testNullResultsAreNotCached() {
+        assertNull(cache.get(ORDER_BY_ID, List.of(1), () -> load(null)));
+        cache.get(ORDER_BY_ID, List.of(1), () -> load(null));
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+}
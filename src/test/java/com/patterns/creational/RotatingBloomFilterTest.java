@@ -0,0 +1,113 @@
+package com.patterns.creational;
+
+import com.patterns.creational.factory.RotatingBloomFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RotatingBloomFilterTest {
+
+    @Test
+    void testSecondSightingWithinWindowIsDuplicate() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10, TimeUnit.MINUTES, 6, 1000, 0.001);
+
+        assertTrue(filter.add(42L), "First sighting should be new");
+        assertFalse(filter.add(42L), "Second sighting should be a duplicate");
+        assertTrue(filter.mightContain(42L));
+        assertTrue(filter.add(43L));
+    }
+
+    @Test
+    void testEntriesAreForgottenAfterWindow() throws InterruptedException {
+        RotatingBloomFilter filter = new RotatingBloomFilter(100, TimeUnit.MILLISECONDS, 4, 1000, 0.001);
+        filter.add(7L);
+
+        // At most a window and one slice later
+        Thread.sleep(150);
+
+        assertFalse(filter.mightContain(7L), "Entry should age out with its slice");
+        assertTrue(filter.add(7L), "Entry should be accepted again after the window");
+    }
+
+    @Test
+    void testEntriesAreRememberedForTheWholeWindow() throws InterruptedException {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(600);
+        RotatingBloomFilter filter = new RotatingBloomFilter(600, TimeUnit.MILLISECONDS, 6, 1000, 0.001);
+        long added = System.nanoTime();
+        filter.add(7L);
+
+        long lastChecked = 0;
+        while (true) {
+            boolean present = filter.mightContain(7L);
+            long elapsed = System.nanoTime() - added;
+            if (elapsed >= windowNanos) {
+                break;
+            }
+            assertTrue(present, "Entry forgotten " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms into the window");
+            lastChecked = elapsed;
+            Thread.sleep(5);
+        }
+        assertTrue(lastChecked > windowNanos * 9 / 10, "Should have checked close to the end of the window");
+    }
+
+    @Test
+    void testFalsePositiveRateStaysNearConfiguredRate() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10, TimeUnit.MINUTES, 6, 600_000, 0.01);
+        SplittableRandom random = new SplittableRandom(1);
+        // Everything lands in one slice here, which is sized for a sixth of the window
+        for (int i = 0; i < 100_000; i++) {
+            filter.add(random.nextLong());
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 2_000, "False positive rate too high: " + falsePositives + " in 100000");
+        // Seven slots of about 166 KB, one more than there are slices
+        assertTrue(filter.getMemoryBytes() < 1_250_000, "600k entries per window should fit in under 1.25 MB");
+    }
+
+    @Test
+    void testFalsePositiveRateHoldsAcrossEverySlice() {
+        long sliceMillis = 200;
+        RotatingBloomFilter filter = new RotatingBloomFilter(6 * sliceMillis, TimeUnit.MILLISECONDS, 6, 60_000, 0.01);
+        SplittableRandom random = new SplittableRandom(2);
+        // A sixth of the window's entries in each slice, so lookups consult six full slices
+        for (int slice = 0; slice < 6; slice++) {
+            long epoch = System.nanoTime() / TimeUnit.MILLISECONDS.toNanos(sliceMillis);
+            for (int i = 0; i < 10_000; i++) {
+                filter.add(random.nextLong());
+            }
+            while (slice < 5 && System.nanoTime() / TimeUnit.MILLISECONDS.toNanos(sliceMillis) == epoch) {
+                Thread.onSpinWait();
+            }
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+
+        // About 1,000 expected; summing six slices each sized for the full rate would give about 6,000
+        assertTrue(falsePositives < 1_500, "False positive rate too high: " + falsePositives + " in 100000");
+    }
+
+    @Test
+    void testInvalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RotatingBloomFilter(0, TimeUnit.SECONDS, 4, 1000, 0.01));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RotatingBloomFilter(1, TimeUnit.SECONDS, 1, 1000, 0.01));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RotatingBloomFilter(1, TimeUnit.SECONDS, 4, 1000, 1.0));
+    }
+}
@@ -0,0 +1,61 @@
+package com.patterns.creational;
+
+import com.patterns.creational.singleton.ShardRouter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Own context, so the shard added here does not change what ShardRouterTest sees moving.
+// The result cache is off so reads reach the stores while keys move.
+@SpringBootTest(properties = {
+        "database.shards.names=shard-a,shard-b,shard-c",
+        "database.shards.storage-root=target/test-shards/${random.uuid}",
+        "database.result-cache.max-entries=0"
+})
+class ShardMigrationTest {
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Test
+    void testReadsDuringAddShardNeverMissAMovedKey() throws Exception {
+        int keys = 2000;
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[keys];
+        for (int i = 0; i < keys; i++) {
+            writes[i] = shardRouter.saveAsync("accounts", "A" + i, "account-" + i);
+        }
+        CompletableFuture.allOf(writes).get(10, TimeUnit.SECONDS);
+
+        AtomicBoolean moving = new AtomicBoolean(true);
+        AtomicReference<String> missed = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            int offset = r;
+            readers[r] = new Thread(() -> {
+                for (int i = offset; moving.get() && missed.get() == null; i = (i + readers.length) % keys) {
+                    if (shardRouter.find("accounts", "A" + i) == null) {
+                        missed.set("A" + i);
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        try {
+            shardRouter.addShard("shard-d");
+        } finally {
+            moving.set(false);
+            for (Thread reader : readers) {
+                reader.join(5_000);
+            }
+        }
+
+        assertNull(missed.get(), "A read during the move should find the key on its old or new owner");
+    }
+}
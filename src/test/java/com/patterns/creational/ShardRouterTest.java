@@ -0,0 +1,92 @@
+package com.patterns.creational;
+
+import com.patterns.creational.singleton.ConsistentHashRing;
+import com.patterns.creational.singleton.DatabaseConnection;
+import com.patterns.creational.singleton.ShardRouter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "database.shards.names=shard-a,shard-b,shard-c",
+        "database.shards.storage-root=target/test-shards/${random.uuid}"
+})
+class ShardRouterTest {
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Test
+    void testRingSpreadsKeysEvenly() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(128)
+                .withNode("a", "a")
+                .withNode("b", "b")
+                .withNode("c", "c")
+                .withNode("d", "d");
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 40_000; i++) {
+            counts.merge(ring.nodeFor("user-" + i), 1, Integer::sum);
+        }
+
+        for (int count : counts.values()) {
+            assertTrue(count > 7_000 && count < 13_000, "Each node should own about a quarter of the keys: " + counts);
+        }
+    }
+
+    @Test
+    void testAddingNodeOnlyMovesKeysToIt() {
+        ConsistentHashRing<String> before = new ConsistentHashRing<String>(128)
+                .withNode("a", "a")
+                .withNode("b", "b")
+                .withNode("c", "c");
+        ConsistentHashRing<String> after = before.withNode("d", "d");
+        int moved = 0;
+        for (int i = 0; i < 30_000; i++) {
+            String key = "ORD" + i;
+            if (!before.nodeFor(key).equals(after.nodeFor(key))) {
+                assertEquals("d", after.nodeFor(key), "Keys should only move to the new node");
+                moved++;
+            }
+        }
+
+        assertTrue(moved > 5_000 && moved < 10_000, "About 1/4 of the keys should move, moved " + moved);
+    }
+
+    @Test
+    void testKeysAreStoredOnTheirOwningShard() throws Exception {
+        shardRouter.saveAsync("orders", "ORD-1", "pending").get(5, TimeUnit.SECONDS);
+
+        DatabaseConnection owner = shardRouter.shardFor("ORD-1");
+        assertEquals("pending", owner.find("orders", "ORD-1"));
+        assertEquals("pending", shardRouter.find("orders", "ORD-1"));
+        assertSame(owner, shardRouter.shardFor("ORD-1"), "Routing should be stable");
+        assertEquals(List.of("shard-a", "shard-b", "shard-c"), shardRouter.getShardNames().subList(0, 3));
+    }
+
+    @Test
+    void testAddShardMovesAboutOneNthOfKeys() throws Exception {
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[2000];
+        for (int i = 0; i < writes.length; i++) {
+            writes[i] = shardRouter.saveAsync("users", "U" + i, "user-" + i);
+        }
+        CompletableFuture.allOf(writes).get(10, TimeUnit.SECONDS);
+
+        int moved = shardRouter.addShard("shard-d");
+
+        assertTrue(moved > 300 && moved < 700, "About 1/4 of the keys should move, moved " + moved);
+        for (int i = 0; i < writes.length; i++) {
+            assertEquals("user-" + i, shardRouter.find("users", "U" + i), "Key U" + i + " should survive the move");
+        }
+        Map<?, ?> shards = (Map<?, ?>) shardRouter.getShardStats().get("shards");
+        assertEquals(moved, ((Map<?, ?>) shards.get("shard-d")).get("keys"));
+        assertThrows(IllegalStateException.class, () -> shardRouter.addShard("shard-d"));
+    }
+}
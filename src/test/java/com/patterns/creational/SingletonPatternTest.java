@@ -1,11 +1,24 @@
 package com.patterns.creational;
 
+import com.patterns.creational.singleton.ConnectionLease;
+import com.patterns.creational.singleton.ConnectionState;
 import com.patterns.creational.singleton.DatabaseConnection;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -92,4 +105,173 @@ class SingletonPatternTest {
         assertFalse(databaseConnection1.isConnected(), 
                    "Multiple disconnect calls should not affect state");
     }
+
+    @Test
+    void testAcquireLeaseFromPool() {
+        assertThrows(IllegalStateException.class, () -> databaseConnection1.acquire(),
+                    "Acquire should fail while disconnected");
+
+        databaseConnection1.connect();
+        try (ConnectionLease lease = databaseConnection1.acquire()) {
+            assertTrue(lease.getConnection().isOpen(), "Leased connection should be open");
+            assertEquals(1, databaseConnection1.getPoolStats().get("active"));
+        }
+        assertEquals(0, databaseConnection1.getPoolStats().get("active"),
+                    "Lease should be returned to the pool");
+    }
+
+    @Test
+    void testLifecycleStartWarmsPool() {
+        databaseConnection1.start();
+
+        assertTrue(databaseConnection1.isRunning(), "Lifecycle start should connect the database");
+        assertTrue((Integer) databaseConnection1.getPoolStats().get("idle") >= 2,
+                  "Minimum pool size should be warm after start");
+
+        databaseConnection1.stop();
+        assertFalse(databaseConnection1.isRunning());
+    }
+
+    @Test
+    void testStateTransitions() {
+        assertEquals(ConnectionState.DISCONNECTED, databaseConnection1.getState());
+
+        databaseConnection1.connect();
+        assertEquals(ConnectionState.CONNECTED, databaseConnection1.getState());
+
+        // A clean health probe keeps the connection healthy
+        databaseConnection1.probeHealth();
+        assertEquals(ConnectionState.CONNECTED, databaseConnection1.getState());
+
+        databaseConnection1.disconnect();
+        assertEquals(ConnectionState.DISCONNECTED, databaseConnection1.getState());
+    }
+
+    @Test
+    void testConcurrentConnectAndDisconnect() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(100);
+
+        for (int i = 0; i < 100; i++) {
+            boolean connect = i % 2 == 0;
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    if (connect) {
+                        databaseConnection1.connect();
+                    } else {
+                        databaseConnection1.disconnect();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // Whatever the interleaving, the connection must settle in a consistent state
+        ConnectionState state = databaseConnection1.getState();
+        assertTrue(state == ConnectionState.CONNECTED || state == ConnectionState.DISCONNECTED,
+                  "Unexpected settled state: " + state);
+        assertEquals(state == ConnectionState.CONNECTED, databaseConnection1.isConnected());
+    }
+
+    @Test
+    void testAsyncWritesAreGroupCommitted() {
+        databaseConnection1.connect();
+
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[20];
+        for (int i = 0; i < writes.length; i++) {
+            writes[i] = databaseConnection1.writeAsync("INSERT INTO orders (id, amount) VALUES (?, ?)", "ORD" + i, 10.0);
+        }
+        assertDoesNotThrow(() -> CompletableFuture.allOf(writes).get(5, TimeUnit.SECONDS));
+
+        Map<String, Object> stats = databaseConnection1.getWriteStats();
+        assertEquals(20L, stats.get("committedWrites"));
+        assertTrue((Long) stats.get("committedBatches") < 20, "Writes should be coalesced into batches");
+    }
+
+    @Test
+    void testAsyncWriteWithWrongParameterCountFails() {
+        databaseConnection1.connect();
+
+        CompletableFuture<Void> write = databaseConnection1.writeAsync("INSERT INTO orders (id) VALUES (?)");
+        assertThrows(ExecutionException.class, () -> write.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testMalformedWriteDoesNotFailOtherWritesInItsBatch() {
+        databaseConnection1.connect();
+
+        CompletableFuture<Void> before = databaseConnection1.writeAsync("INSERT INTO orders (id) VALUES (?)", "ORD1");
+        CompletableFuture<Void> malformed = databaseConnection1.writeAsync("INSERT INTO orders (id) VALUES (?)");
+        CompletableFuture<Void> after = databaseConnection1.writeAsync("INSERT INTO orders (id) VALUES (?)", "ORD2");
+
+        assertTrue(malformed.isCompletedExceptionally(), "A malformed write should be rejected on submit");
+        assertDoesNotThrow(() -> CompletableFuture.allOf(before, after).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testAsyncWriteWhileDisconnectedFails() {
+        assertTrue(databaseConnection1.writeAsync("DELETE FROM orders").isCompletedExceptionally());
+    }
+
+    @Test
+    void testQueryResultsAreCachedUntilTableIsWritten() throws Exception {
+        databaseConnection1.connect();
+        AtomicInteger loads = new AtomicInteger();
+        List<Object> params = List.of("ORD1");
+        String sql = "SELECT amount FROM orders WHERE id = ?";
+
+        databaseConnection1.query(sql, params, lease -> loads.incrementAndGet());
+        databaseConnection1.query(sql, params, lease -> loads.incrementAndGet());
+        assertEquals(1, loads.get(), "Second read should come from the result cache");
+
+        databaseConnection1.writeAsync("UPDATE orders SET amount = ? WHERE id = ?", 20.0, "ORD1")
+                .get(5, TimeUnit.SECONDS);
+        databaseConnection1.query(sql, params, lease -> loads.incrementAndGet());
+        assertEquals(2, loads.get(), "Committed write should invalidate cached orders results");
+    }
+
+    @Test
+    void testKeyValueWritesNeedStorage() {
+        databaseConnection1.connect();
+
+        // The default configuration keeps the database in memory only
+        assertTrue(databaseConnection1.saveAsync("orders", "ORD1", "pending").isCompletedExceptionally());
+        assertThrows(IllegalStateException.class, () -> databaseConnection1.find("orders", "ORD1"));
+    }
+
+    @Test
+    void testFailedConnectLeavesNoPoolBehind() {
+        DatabaseConnection broken = databaseConnection1.newShard("broken", "");
+        // The pool opens and warms before the write batcher rejects its settings
+        ReflectionTestUtils.setField(broken, "writeBatchSize", 0);
+
+        assertThrows(IllegalArgumentException.class, broken::connect);
+
+        assertEquals(ConnectionState.DISCONNECTED, broken.getState());
+        assertEquals(0, broken.getPoolStats().get("total"), "The warmed pool should be closed and dropped");
+    }
+
+    @Test
+    void testDisconnectDuringConnectIsNotLost() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            DatabaseConnection shard = databaseConnection1.newShard("racing-" + i, "");
+            Thread connecting = new Thread(shard::connect);
+            connecting.start();
+            while (shard.getState() == ConnectionState.DISCONNECTED && connecting.isAlive()) {
+                Thread.onSpinWait();
+            }
+            shard.disconnect();
+            connecting.join(5_000);
+
+            assertEquals(ConnectionState.DISCONNECTED, shard.getState(), "Shard " + i + " was left connected");
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package com.patterns.creational;
+
+import com.patterns.creational.singleton.DatabaseConnection;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "database.storage.path=target/test-db/${random.uuid}")
+class StorageBackedDatabaseTest {
+
+    @Autowired
+    private DatabaseConnection databaseConnection;
+
+    @Test
+    void testSavedValuesSurviveReconnect() throws Exception {
+        databaseConnection.connect();
+        databaseConnection.saveAsync("orders", "ORD1", "pending").get(5, TimeUnit.SECONDS);
+        databaseConnection.saveAsync("users", "U1", "john.doe@example.com").get(5, TimeUnit.SECONDS);
+        assertEquals("pending", databaseConnection.find("orders", "ORD1"));
+
+        databaseConnection.disconnect();
+        databaseConnection.connect();
+
+        assertEquals("pending", databaseConnection.find("orders", "ORD1"), "Store should replay on reconnect");
+        assertEquals("john.doe@example.com", databaseConnection.find("users", "U1"));
+    }
+
+    @Test
+    void testWriteInvalidatesCachedRead() throws Exception {
+        databaseConnection.connect();
+        databaseConnection.saveAsync("orders", "ORD2", "pending").get(5, TimeUnit.SECONDS);
+        assertEquals("pending", databaseConnection.find("orders", "ORD2"));
+
+        databaseConnection.saveAsync("orders", "ORD2", "shipped").get(5, TimeUnit.SECONDS);
+        assertEquals("shipped", databaseConnection.find("orders", "ORD2"), "Cached read should be invalidated");
+
+        databaseConnection.deleteAsync("orders", "ORD2").get(5, TimeUnit.SECONDS);
+        assertNull(databaseConnection.find("orders", "ORD2"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.patterns.creational;
+
+import com.patterns.creational.factory.ChannelDispatcher;
+import com.patterns.creational.factory.Notification;
+import com.patterns.creational.factory.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void testBurstIsFreeThenTokensArriveAtRate() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(1), "Burst tokens should be available immediately");
+        }
+        long wait = bucket.reserve(1);
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(80) && wait <= TimeUnit.MILLISECONDS.toNanos(100),
+                "Next token should be one interval away, was " + wait);
+        assertFalse(bucket.isFull());
+    }
+
+    @Test
+    void testConcurrentReservationsNeverOverbook() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Long>> waits = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            waits.add(executor.submit(() -> bucket.reserve(1)));
+        }
+
+        long maxWait = 0;
+        for (Future<Long> wait : waits) {
+            maxWait = Math.max(maxWait, wait.get());
+        }
+        executor.shutdown();
+
+        // 1000 tokens at 1000/s: the last one is about a second out, however the threads interleave
+        assertTrue(maxWait > TimeUnit.MILLISECONDS.toNanos(900), "Tokens were overbooked, max wait " + maxWait);
+    }
+
+    @Test
+    void testIdleBucketRefillsOnlyUpToBurst() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 2);
+        bucket.reserve(2);
+        Thread.sleep(20);
+
+        assertTrue(bucket.isFull());
+        assertEquals(0, bucket.reserve(2));
+        assertTrue(bucket.reserve(1) > 0, "Idle time beyond the burst should not bank extra tokens");
+    }
+
+    @Test
+    void testChannelLimitDelaysInsteadOfRejecting() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .rateLimit(50, 5)
+                .build();
+        CompletableFuture<?>[] deliveries = new CompletableFuture<?>[15];
+
+        long started = System.nanoTime();
+        for (int i = 0; i < deliveries.length; i++) {
+            deliveries[i] = dispatcher.dispatch("message " + i);
+        }
+        CompletableFuture.allOf(deliveries).get(5, TimeUnit.SECONDS);
+
+        // 5 burst tokens, then 10 more at 50/s
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(180), "Channel should be paced");
+        assertEquals(15, dispatcher.getDelivered());
+        assertEquals(0, dispatcher.getRejected());
+        assertTrue(dispatcher.getDelayedByChannel() > 0);
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testRecipientLimitDoesNotHoldUpOtherRecipients() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelDispatcher dispatcher = new ChannelDispatcher.ChannelDispatcherBuilder()
+                .channel(channel)
+                .recipientRateLimit(5, 1)
+                .build();
+
+        CompletableFuture<Void> first = dispatcher.dispatch("alice", "alice 1");
+        CompletableFuture<Void> second = dispatcher.dispatch("alice", "alice 2");
+        CompletableFuture<Void> other = dispatcher.dispatch("bob", "bob 1");
+        CompletableFuture.allOf(first, second, other).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("alice 1", "bob 1", "alice 2"), channel.sent,
+                "Alice's second message should wait for her token without delaying Bob");
+        assertEquals(1, dispatcher.getDelayedByRecipient());
+        assertEquals(0, dispatcher.getRejected());
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testInvalidLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(10, 0));
+    }
+
+    private static class RecordingChannel implements Notification {
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String getType() {
+            return "recording";
+        }
+
+        @Override
+        public void send(String message) {
+            sent.add(message);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.patterns.creational;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patterns.creational.builder.User;
+import com.patterns.creational.builder.UserCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCodecTest {
+
+    @Test
+    void testRoundTripPreservesEveryField() {
+        User[] users = {
+                new User.UserBuilder()
+                        .firstName("John")
+                        .lastName("Doe")
+                        .email("john.doe@example.com")
+                        .phone("+1234567890")
+                        .address("123 Main St, City, State")
+                        .age(30)
+                        .build(),
+                new User.UserBuilder()
+                        .firstName("Zoë")
+                        .lastName("Ünal 日本 🚀")
+                        .email("")
+                        .age(-1)
+                        .build(),
+                new User.UserBuilder().build()
+        };
+        int size = 0;
+        for (User user : users) {
+            size += UserCodec.encodedSize(user);
+        }
+
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(size), ByteBuffer.allocateDirect(size)}) {
+            for (User user : users) {
+                UserCodec.encode(user, buffer);
+            }
+            assertFalse(buffer.hasRemaining(), "encodedSize should match what encode writes");
+            buffer.flip();
+            for (User user : users) {
+                assertEquals(user.toString(), UserCodec.decode(buffer).toString());
+            }
+            assertFalse(buffer.hasRemaining());
+        }
+        // Header, "Zoë", the last name, then one length byte each for the empty email and the two nulls
+        int lastNameBytes = users[1].getLastName().getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(5 + (1 + 4) + (1 + lastNameBytes) + 3, UserCodec.encodedSize(users[1]));
+    }
+
+    @Test
+    void testViewReadsFieldsWithoutDecodingTheRest() {
+        ByteBuffer buffer = UserCodec.encode(new User.UserBuilder()
+                .firstName("Jane")
+                .email("jane@example.com")
+                .age(25)
+                .build());
+
+        UserCodec.EncodedUser view = UserCodec.view(buffer);
+        assertFalse(buffer.hasRemaining(), "The view should advance past the record");
+        assertEquals(25, view.getAge());
+        assertEquals("jane@example.com", view.getEmail());
+        assertNull(view.getLastName());
+    }
+
+    @Test
+    void testLongFieldFromDirectBufferIsNotKeptPerThread() {
+        String address = "x".repeat(100_000);
+        User user = new User.UserBuilder().firstName("John").address(address).age(30).build();
+        ByteBuffer direct = ByteBuffer.allocateDirect(UserCodec.encodedSize(user));
+        UserCodec.encode(user, direct);
+        direct.flip();
+
+        assertEquals(address, UserCodec.decode(direct).getAddress());
+        ThreadLocal<?> scratch = (ThreadLocal<?>) ReflectionTestUtils.getField(UserCodec.class, "SCRATCH");
+        assertTrue(((byte[]) scratch.get()).length <= 16 * 1024, "A one-off long field should not stay cached");
+    }
+
+    @Test
+    void testMalformedRecordsAreRejected() {
+        ByteBuffer encoded = UserCodec.encode(new User.UserBuilder().firstName("John").age(30).build());
+        ByteBuffer truncated = encoded.duplicate().limit(encoded.limit() - 2);
+        assertThrows(IllegalArgumentException.class, () -> UserCodec.decode(truncated));
+        ByteBuffer wrongVersion = encoded.duplicate();
+        wrongVersion.put(0, (byte) 9);
+        assertThrows(IllegalArgumentException.class, () -> UserCodec.decode(wrongVersion));
+        assertThrows(IllegalArgumentException.class,
+                () -> UserCodec.encode(new User.UserBuilder().firstName("John").build(), ByteBuffer.allocate(4)));
+    }
+
+    @Test
+    void testBinaryEncodingIsSmallerThanJson() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        User user = sampleUser();
+
+        byte[] json = mapper.writeValueAsBytes(user);
+        assertTrue(UserCodec.encodedSize(user) < json.length,
+                "Binary " + UserCodec.encodedSize(user) + " bytes vs JSON " + json.length + " bytes");
+        assertEquals(user.toString(), UserCodec.decode(UserCodec.encode(user)).toString());
+        assertEquals(user.toString(), fromJson(mapper.readTree(json)).toString());
+    }
+
+    // Wall-clock comparisons are too noisy for every build; run with -Dbenchmarks=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void testBinaryCodecOutrunsJson() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        User user = sampleUser();
+        ByteBuffer buffer = ByteBuffer.allocate(UserCodec.encodedSize(user));
+        int iterations = 200_000;
+
+        long binaryNanos = Long.MAX_VALUE;
+        long jsonNanos = Long.MAX_VALUE;
+        int checksum = 0;
+        // Best of several rounds, so JIT warm-up does not decide the comparison
+        for (int round = 0; round < 5; round++) {
+            long started = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                buffer.clear();
+                UserCodec.encode(user, buffer);
+                buffer.flip();
+                checksum += UserCodec.decode(buffer).getAge();
+            }
+            binaryNanos = Math.min(binaryNanos, System.nanoTime() - started);
+
+            started = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                checksum += fromJson(mapper.readTree(mapper.writeValueAsBytes(user))).getAge();
+            }
+            jsonNanos = Math.min(jsonNanos, System.nanoTime() - started);
+        }
+
+        assertEquals(2 * 5 * iterations * 30, checksum);
+        assertTrue(binaryNanos * 2 < jsonNanos, "Binary codec should be at least twice as fast as JSON: "
+                + binaryNanos / iterations + " vs " + jsonNanos / iterations + " ns per user");
+    }
+
+    private static User sampleUser() {
+        return new User.UserBuilder()
+                .firstName("John")
+                .lastName("Doe")
+                .email("john.doe@example.com")
+                .phone("+1234567890")
+                .address("123 Main St, City, State")
+                .age(30)
+                .build();
+    }
+
+    private static User fromJson(JsonNode node) {
+        return new User.UserBuilder()
+                .firstName(node.get("firstName").asText())
+                .lastName(node.get("lastName").asText())
+                .email(node.get("email").asText())
+                .phone(node.get("phone").asText())
+                .address(node.get("address").asText())
+                .age(node.get("age").asInt())
+                .build();
+    }
+}
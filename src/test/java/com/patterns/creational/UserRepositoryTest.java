@@ -0,0 +1,155 @@
+package com.patterns.creational;
+
+import com.patterns.creational.builder.User;
+import com.patterns.creational.builder.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserRepositoryTest {
+
+    @Test
+    void testIndexesFindUsersByEveryKey() {
+        UserRepository repository = new UserRepository();
+        long john = repository.insert(user("John", "Doe", "john.doe@example.com", 30));
+        repository.insert(user("Jane", "Dodd", "jane@example.com", 25));
+        repository.insert(user("Ann", "Smith", "ann@example.com", 41));
+        repository.insert(user("Bob", null, null, 30));
+
+        assertEquals("John", repository.findById(john).getFirstName());
+        assertEquals("John", repository.findByEmail(" John.Doe@Example.com").getFirstName());
+        assertNull(repository.findByEmail("nobody@example.com"));
+        assertEquals(List.of("Jane", "John", "Bob"), firstNames(repository.findByAgeBetween(25, 30)));
+        assertEquals(List.of("Jane", "John"), firstNames(repository.findByLastNamePrefix("do")));
+        assertTrue(repository.findByLastNamePrefix("x").isEmpty());
+        assertTrue(repository.findByAgeBetween(50, 40).isEmpty());
+        assertEquals(4, repository.size());
+    }
+
+    @Test
+    void testUpdateAndDeleteMoveIndexEntries() {
+        UserRepository repository = new UserRepository();
+        long id = repository.insert(user("John", "Doe", "john@example.com", 30));
+
+        repository.update(id, user("John", "Roe", "j.roe@example.com", 31));
+        assertNull(repository.findByEmail("john@example.com"));
+        assertDoesNotThrow(() -> repository.insert(user("Other", "Doe", "john@example.com", 30)),
+                "The old email should be free again");
+        assertEquals("John", repository.findByEmail("j.roe@example.com").getFirstName());
+        assertEquals(List.of("John"), firstNames(repository.findByAgeBetween(31, 31)));
+        assertEquals(List.of("John"), firstNames(repository.findByLastNamePrefix("Roe")));
+
+        assertTrue(repository.delete(id));
+        assertFalse(repository.delete(id));
+        assertNull(repository.findByEmail("j.roe@example.com"));
+        assertTrue(repository.findByAgeBetween(31, 31).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> repository.update(id, user("John", "Roe", null, 31)));
+    }
+
+    @Test
+    void testEmailStaysUniqueAndAgeIsValidated() {
+        UserRepository repository = new UserRepository();
+        long first = repository.insert(user("John", "Doe", "john@example.com", 30));
+        long second = repository.insert(user("Jane", "Doe", "jane@example.com", 30));
+
+        assertThrows(IllegalStateException.class, () -> repository.insert(user("Jim", "Doe", "JOHN@example.com", 20)));
+        assertThrows(IllegalStateException.class, () -> repository.update(second, user("Jane", "Doe", "john@example.com", 30)));
+        assertEquals("Jane", repository.findByEmail("jane@example.com").getFirstName());
+        assertEquals("John", repository.findById(first).getFirstName());
+        assertThrows(IllegalArgumentException.class, () -> repository.insert(user("Old", "Doe", null, -1)));
+        assertEquals(2, repository.size());
+    }
+
+    @Test
+    void testConcurrentWritersLeaveIndexesConsistent() throws Exception {
+        UserRepository repository = new UserRepository();
+        int users = 200;
+        for (int i = 0; i < users; i++) {
+            repository.insert(user("User" + i, "Name" + i, "user" + i + "@example.com", 20));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            writers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    long id = 1 + random.nextInt(users);
+                    // Every writer competes for the same small pool of emails
+                    String email = "shared" + random.nextInt(users / 2) + "@example.com";
+                    try {
+                        repository.update(id, user("User" + id, "Name" + random.nextInt(10), email, random.nextInt(100)));
+                    } catch (IllegalStateException duplicate) {
+                        // Another user holds the email
+                    }
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        List<String> emails = new ArrayList<>();
+        for (long id = 1; id <= users; id++) {
+            User user = repository.findById(id);
+            assertSame(user, repository.findByEmail(user.getEmail()), "Email index for user " + id);
+            assertTrue(repository.findByAgeBetween(user.getAge(), user.getAge()).contains(user));
+            assertTrue(repository.findByLastNamePrefix(user.getLastName()).contains(user));
+            emails.add(user.getEmail());
+        }
+        assertEquals(users, emails.stream().distinct().count(), "Emails should stay unique");
+        assertEquals(users, repository.findByAgeBetween(0, 200).size());
+        assertEquals(users, repository.findByLastNamePrefix("name").size());
+    }
+
+    @Test
+    void testPointLookupsStaySubMicrosecond() {
+        UserRepository repository = new UserRepository();
+        int users = 200_000;
+        for (int i = 0; i < users; i++) {
+            repository.insert(user("User" + i, "Name" + i, "user" + i + "@example.com", i % 90));
+        }
+        String[] emails = new String[users];
+        for (int i = 0; i < users; i++) {
+            emails[i] = "user" + i + "@example.com";
+        }
+        int found = 0;
+        for (int round = 0; round < 3; round++) {
+            found = 0;
+            long started = System.nanoTime();
+            for (int i = 0; i < users; i++) {
+                if (repository.findById(i + 1) != null && repository.findByEmail(emails[i]) != null) {
+                    found++;
+                }
+            }
+            long perLookup = (System.nanoTime() - started) / (2L * users);
+            if (round == 2) {
+                assertTrue(perLookup < 1_000, "Lookups took " + perLookup + " ns each");
+            }
+        }
+        assertEquals(users, found);
+    }
+
+    private static User user(String firstName, String lastName, String email, int age) {
+        return new User.UserBuilder()
+                .firstName(firstName)
+                .lastName(lastName)
+                .email(email)
+                .age(age)
+                .build();
+    }
+
+    private static List<String> firstNames(List<User> users) {
+        List<String> names = new ArrayList<>();
+        users.forEach(user -> names.add(user.getFirstName()));
+        return names;
+    }
+}
@@ -0,0 +1,137 @@
+package com.patterns.creational;
+
+import com.patterns.creational.singleton.WriteBatcher;
+import com.patterns.creational.singleton.WriteOperation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBatcherTest {
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private WriteBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    @Test
+    void testFullBatchesAreCommittedTogether() {
+        // Long linger so only the size trigger can flush
+        batcher = new WriteBatcher(batch -> batchSizes.add(batch.size()), 5, 10_000, 100);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertEquals(List.of(5, 5), batchSizes, "Ten writes should commit as two full batches");
+        assertEquals(2, batcher.getCommittedBatches());
+        assertEquals(10, batcher.getCommittedWrites());
+    }
+
+    @Test
+    void testLingerFlushesPartialBatch() {
+        batcher = new WriteBatcher(batch -> batchSizes.add(batch.size()), 100, 20, 100);
+
+        CompletableFuture<Void> first = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 1));
+        CompletableFuture<Void> second = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 2));
+        CompletableFuture.allOf(first, second).orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertEquals(2, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(batchSizes.size() <= 2, "Writes within the linger should share a batch");
+    }
+
+    @Test
+    void testCommitFailureFailsWholeBatch() {
+        batcher = new WriteBatcher(batch -> {
+            throw new IllegalStateException("disk full");
+        }, 2, 10_000, 100);
+
+        CompletableFuture<Void> first = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 1));
+        CompletableFuture<Void> second = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 2));
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertEquals("disk full", exception.getCause().getMessage());
+        assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, batcher.getFailedWrites());
+    }
+
+    @Test
+    void testErrorInCommitFailsBatchWithoutStoppingFlusher() {
+        batcher = new WriteBatcher(batch -> {
+            if (batchSizes.isEmpty()) {
+                batchSizes.add(batch.size());
+                throw new StackOverflowError("committer blew up");
+            }
+            batchSizes.add(batch.size());
+        }, 1, 0, 100);
+
+        CompletableFuture<Void> first = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 1));
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(StackOverflowError.class, exception.getCause());
+
+        CompletableFuture<Void> second = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 2));
+        assertDoesNotThrow(() -> second.get(5, TimeUnit.SECONDS), "Flusher should keep committing after an Error");
+        assertEquals(1, batcher.getFailedWrites());
+    }
+
+    @Test
+    void testCloseCommitsQueuedWritesAndRejectsNewOnes() {
+        batcher = new WriteBatcher(batch -> batchSizes.add(batch.size()), 100, 10_000, 100);
+
+        CompletableFuture<Void> pending = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 1));
+        batcher.close();
+
+        assertDoesNotThrow(() -> pending.get(5, TimeUnit.SECONDS), "Queued write should be flushed on close");
+        CompletableFuture<Void> rejected = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 2));
+        assertTrue(rejected.isCompletedExceptionally());
+    }
+
+    @Test
+    void testCloseInterruptsAStuckCommitAndWaitsForIt() throws Exception {
+        CountDownLatch committing = new CountDownLatch(1);
+        AtomicBoolean inCommit = new AtomicBoolean();
+        batcher = new WriteBatcher(batch -> {
+            inCommit.set(true);
+            committing.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Interrupted while committing", e);
+            } finally {
+                inCommit.set(false);
+            }
+        }, 1, 0, 100);
+
+        CompletableFuture<Void> stuck = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 1));
+        assertTrue(committing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> queued = batcher.submit(new WriteOperation("INSERT INTO orders VALUES (?)", 2));
+        batcher.close(100, TimeUnit.MILLISECONDS);
+
+        assertFalse(inCommit.get(), "No commit may still be running once close returns");
+        assertTrue(stuck.isCompletedExceptionally());
+        assertTrue(queued.isCompletedExceptionally());
+        assertEquals(0, batcher.getQueuedWrites());
+    }
+
+    @Test
+    void testInvalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new WriteBatcher(batch -> { }, 0, 5, 10));
+        assertThrows(IllegalArgumentException.class, () -> new WriteOperation(" "));
+    }
+}
@@ -0,0 +1,74 @@
+package com.patterns.creational.factory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DispatchShardTest {
+
+    @Test
+    void testDigestMergesAtThresholdAndSharesItsOutcome() {
+        DispatchShard shard = shard(0, TimeUnit.MINUTES.toNanos(1), 3);
+        List<Delivery> batch = new ArrayList<>();
+        List<Delivery> members = List.of(normal("bob", "a"), normal("bob", "b"), normal("bob", "c"));
+
+        shard.admit(members.get(0), batch);
+        shard.admit(members.get(1), batch);
+        assertTrue(batch.isEmpty(), "Messages wait in the digest until the threshold");
+        assertTrue(shard.hasOpenDigests());
+        shard.admit(members.get(2), batch);
+
+        assertEquals(1, batch.size());
+        assertEquals("a + b + c", batch.get(0).message);
+        batch.get(0).result.complete(null);
+        members.forEach(member -> assertTrue(member.result.isDone() && !member.result.isCompletedExceptionally()));
+        assertEquals(1, shard.getDigestsSent());
+        assertEquals(3, shard.getDigestedMessages());
+    }
+
+    @Test
+    void testUrgentMessageSkipsTheDigest() {
+        DispatchShard shard = shard(0, TimeUnit.MINUTES.toNanos(1), 3);
+        List<Delivery> batch = new ArrayList<>();
+
+        shard.admit(new Delivery("bob", "code", NotificationPriority.HIGH, Delivery.NO_DEADLINE), batch);
+
+        assertEquals(1, batch.size());
+        assertFalse(shard.hasOpenDigests());
+    }
+
+    @Test
+    void testRecipientOverItsLimitIsHeldAndFailedOnShutdown() {
+        DispatchShard shard = shard(0.01, 0, 1);
+        List<Delivery> batch = new ArrayList<>();
+        Delivery first = normal("carol", "1");
+        Delivery second = normal("carol", "2");
+        Delivery other = normal("dave", "1");
+
+        shard.admit(first, batch);
+        shard.admit(second, batch);
+        shard.admit(other, batch);
+
+        assertEquals(List.of(first, other), batch, "Only Carol's second message waits for a token");
+        assertEquals(1, shard.getDelayedByRecipient());
+        assertEquals(2, shard.getTrackedRecipients());
+        shard.failParked();
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> second.result.get());
+        assertInstanceOf(UndeliveredNotificationException.class, failure.getCause());
+    }
+
+    private static DispatchShard shard(double recipientRate, long digestWindowNanos, int digestMaxMessages) {
+        return new DispatchShard(new PriorityLevelQueue<>(10, 4, delivery -> delivery.priority.ordinal()),
+                "test", 10, recipientRate, 1, digestWindowNanos, digestMaxMessages,
+                messages -> String.join(" + ", messages));
+    }
+
+    private static Delivery normal(String recipient, String message) {
+        return new Delivery(recipient, message, NotificationPriority.NORMAL, Delivery.NO_DEADLINE);
+    }
+}
@@ -0,0 +1,52 @@
+package com.patterns.creational.factory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriorityLevelQueueTest {
+
+    // Elements are "<level>:<name>"
+    private final PriorityLevelQueue<String> queue =
+            new PriorityLevelQueue<>(4, 3, element -> element.charAt(0) - '0');
+
+    @Test
+    void testMostUrgentLevelIsServedFirstAndEachLevelInOrder() {
+        queue.offer("2:bulk");
+        queue.offer("0:otp");
+        queue.offer("2:newsletter");
+        queue.offer("1:alert");
+
+        List<String> taken = new ArrayList<>();
+        assertEquals(4, queue.drainTo(taken, 10));
+        assertEquals(List.of("0:otp", "1:alert", "2:bulk", "2:newsletter"), taken);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testCapacityIsSharedByAllLevels() throws InterruptedException {
+        for (String element : List.of("0:a", "1:b", "2:c", "2:d")) {
+            assertTrue(queue.offer(element));
+        }
+
+        assertFalse(queue.offer("0:e"), "A full queue refuses even the most urgent level");
+        assertFalse(queue.offer("0:e", 20, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(2, queue.size(2));
+    }
+
+    @Test
+    void testPollLeastUrgentNeverTakesAMoreUrgentElement() {
+        queue.offer("0:otp");
+        queue.offer("1:alert");
+
+        assertNull(queue.pollLeastUrgent(2), "Nothing at level 2 or below to shed");
+        assertEquals("1:alert", queue.pollLeastUrgent(1));
+        assertTrue(queue.remove("0:otp"));
+        assertTrue(queue.isEmpty());
+    }
+}